@@ -0,0 +1,108 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+
+/**
+ * The data a benchmark runs against, and random picks from it.
+ *
+ * Sizes come from system properties (-Dbb.bench.people=... etc.) and the
+ * data is the same for the same sizes, -Dbb.bench.skew and -Dbb.bench.seed.
+ * DatasetGenerator makes it, with a few popular topics holding most of the
+ * posts and likes, and topics are picked with the same popularity. Ids are
+ * numbered from 1 and usernames are "u" + id.
+ */
+public class BenchData {
+
+    private final int people;
+    private final int forums;
+    private final int posts;
+
+    private final DatasetGenerator generator;
+
+    public BenchData(int people, int forums, int topics, int posts,
+                     int topicLikes, int postLikes, double skew, long seed) {
+        this.generator = new DatasetGenerator(people, forums, topics, posts,
+                topicLikes, postLikes, skew, seed);
+        this.people = people;
+        this.forums = forums;
+        this.posts = posts;
+    }
+
+    /**
+     * @return the sizes given by the bb.bench.* system properties.
+     */
+    public static BenchData fromProperties() {
+        return new BenchData(
+                Integer.getInteger("bb.bench.people", 1000),
+                Integer.getInteger("bb.bench.forums", 20),
+                Integer.getInteger("bb.bench.topics", 2000),
+                Integer.getInteger("bb.bench.posts", 20000),
+                Integer.getInteger("bb.bench.topicLikes", 5000),
+                Integer.getInteger("bb.bench.postLikes", 20000),
+                Double.parseDouble(System.getProperty("bb.bench.skew", "1")),
+                Long.getLong("bb.bench.seed", 42));
+    }
+
+    DatasetGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Loads the data into an empty schema.
+     * @param c a connection from BenchDatabase.openBulkConnection().
+     */
+    public void load(Connection c) throws SQLException {
+        generator.load(c);
+    }
+
+    public static String username(int id) {
+        return "u" + id;
+    }
+
+    public String randomUsername(SplittableRandom random) {
+        return username(1 + random.nextInt(people));
+    }
+
+    public long randomForum(SplittableRandom random) {
+        return 1 + random.nextInt(forums);
+    }
+
+    /**
+     * @return a topic, the popular ones more often.
+     */
+    public long randomTopic(SplittableRandom random) {
+        return generator.randomTopic(random);
+    }
+
+    /**
+     * @return the number of a post the topic had when loaded.
+     */
+    public int randomPostNumber(SplittableRandom random, long topicId) {
+        return 1 + random.nextInt(generator.getPostCount((int) topicId));
+    }
+
+    /**
+     * @return a getTopic paging cursor somewhere in the topic as loaded.
+     */
+    public long randomTopicCursor(SplittableRandom random, long topicId) {
+        return random.nextInt(generator.getPostCount((int) topicId));
+    }
+
+    /**
+     * @return a getAdvancedForum paging cursor somewhere in the loaded
+     * posts' time range.
+     */
+    public String randomForumCursor(SplittableRandom random) {
+        long at = DatasetGenerator.FIRST_POST_AT
+                + (1 + random.nextInt(posts)) * DatasetGenerator.POST_INTERVAL;
+        return at + "_" + Integer.MAX_VALUE;
+    }
+}
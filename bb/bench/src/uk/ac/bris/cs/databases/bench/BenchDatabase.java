@@ -0,0 +1,94 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * A database to benchmark against: an embedded MariaDB (MariaDB4j) on a
+ * free port, or an existing server given by -Dbb.bench.url. Either way the
+ * schema is created from scratch, so never point it at a database whose
+ * data you want to keep.
+ */
+public class BenchDatabase implements AutoCloseable {
+
+    private static final String EXTERNAL_URL = System.getProperty("bb.bench.url");
+    private static final String SCHEMA = System.getProperty("bb.bench.schema", "../forum_schema.sql");
+
+    // Null when using an existing server
+    private final DB db;
+    private final String url;
+
+    private BenchDatabase(DB db, String url) {
+        this.db = db;
+        this.url = url;
+    }
+
+    /**
+     * Starts the database and creates an empty schema in it.
+     * @throws ManagedProcessException if the embedded server does not start.
+     * @throws IOException if the schema cannot be read.
+     * @throws SQLException if the schema cannot be created.
+     */
+    public static BenchDatabase start()
+            throws ManagedProcessException, IOException, SQLException {
+        BenchDatabase bench;
+        if (EXTERNAL_URL != null) {
+            bench = new BenchDatabase(null, EXTERNAL_URL);
+        } else {
+            DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+            config.setPort(0);
+            DB db = DB.newEmbeddedDB(config.build());
+            db.start();
+            db.createDB("bb");
+            bench = new BenchDatabase(db, "jdbc:mariadb://localhost:"
+                    + db.getConfiguration().getPort() + "/bb?user=root");
+        }
+
+        try (Connection c = bench.openBulkConnection()) {
+            SqlScript.run(c, new File(SCHEMA));
+        }
+        return bench;
+    }
+
+    /**
+     * @return the JDBC connection string.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @param options more connection options, e.g. "useServerPrepStmts=true".
+     * @return the JDBC connection string with the options added.
+     */
+    public String getUrl(String options) {
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + options;
+    }
+
+    /**
+     * @return a connection for loading data, which sends JDBC batches as
+     * multi-row statements.
+     */
+    public Connection openBulkConnection() throws SQLException {
+        return DriverManager.getConnection(getUrl("rewriteBatchedStatements=true"));
+    }
+
+    @Override
+    public void close() throws ManagedProcessException {
+        if (db != null) {
+            db.stop();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.sql.Connection;
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.cwk3.API;
+import uk.ac.bris.cs.databases.cwk3.ConnectionPool;
+
+/**
+ * A freshly loaded database and an API over it, shared by the threads of
+ * one benchmark run. The pool is sized like the server's default.
+ *
+ * The statement cache size is a benchmark parameter, so that every method
+ * is measured with and without it; -p statementCacheSize=64 runs only one.
+ * Statements are prepared on the server, as they are by the Server.
+ */
+@State(Scope.Benchmark)
+public class BenchState {
+
+    private static final int POOL_SIZE = Integer.getInteger("bb.bench.poolSize",
+            Runtime.getRuntime().availableProcessors() * 2);
+
+    // Prepared statements kept per connection; 0 turns the cache off
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    BenchDatabase db;
+    ConnectionPool pool;
+    API api;
+    BenchData data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = BenchData.fromProperties();
+        db = BenchDatabase.start();
+        try (Connection c = db.openBulkConnection()) {
+            data.load(c);
+        }
+
+        pool = new ConnectionPool(db.getUrl("useServerPrepStmts=true"), POOL_SIZE, POOL_SIZE, 5000, 0, statementCacheSize);
+        api = new API(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.close();
+        db.close();
+    }
+
+    /**
+     * @return the value of a successful call.
+     * @throws IllegalStateException if the call failed, so that a broken
+     * method fails its benchmark instead of timing the error path.
+     */
+    static <T> T check(Result<T> r) {
+        if (!r.isSuccess()) {
+            throw new IllegalStateException((r.isFatal() ? "Fatal: " : "Failure: ") + r.getMessage());
+        }
+        return r.getValue();
+    }
+
+    /**
+     * Each thread's own random picks.
+     */
+    @State(Scope.Thread)
+    public static class Picks {
+        private static SplittableRandom seeds = new SplittableRandom(Long.getLong("bb.bench.seed", 42));
+
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            synchronized (Picks.class) {
+                random = seeds.split();
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a forum with the skew of a real one and loads it.
+ *
+ * Topic popularity follows a Zipf distribution with exponent -Dbb.bench.skew
+ * (0 is uniform, 1 the classic Zipf): the k-th most popular topic gets posts
+ * and likes in proportion to 1/k^skew, so post counts per topic follow a
+ * power law with a few huge topics and a long tail of short ones. Which
+ * topics are popular is shuffled, so they are spread over the ids. Forums
+ * and post authors are skewed the same way, by id: forum 1 and person 1 are
+ * the busiest. Every topic has at least its first post, and nobody likes
+ * the same topic or post twice.
+ *
+ * The sizes, skew and seed fix the data completely. Where everything goes
+ * is planned in memory when the generator is made, so the picks in
+ * BenchData work without loading anything; load() then writes the rows in
+ * primary key order as multi-row INSERTs, with the like counts and the
+ * summary tables worked out as it goes instead of by queries afterwards.
+ *
+ * Run on its own to load a real database, e.g. from bb/:
+ * ant dataset -Dbb.bench.url=jdbc:mariadb://host/db?user=... -Dbb.bench.posts=100000000
+ */
+public class DatasetGenerator {
+
+    // Rows sent per JDBC batch and committed together
+    private static final int BATCH_SIZE = 5000;
+
+    // Posts are, on average, ten seconds apart, starting here
+    static final long FIRST_POST_AT = 1514764800000L;
+    static final long POST_INTERVAL = 10000L;
+
+    private static final int PROGRESS_EVERY = 1000000;
+
+    private static final int[] NONE = new int[0];
+
+    private final int people;
+    private final int forums;
+    private final int topics;
+    private final int posts;
+    private final long seed;
+
+    private final Zipf topicPopularity;
+    private final Zipf forumPopularity;
+    private final Zipf personActivity;
+
+    // Topic ids by popularity, most popular first
+    private final int[] topicByRank;
+
+    // Per topic, index 0 unused
+    private final int[] forumOf;
+    private final int[] postCounts;
+    private final int[] topicLikeCounts;
+    private final int[] postLikeCounts;
+
+    private PrintStream progress;
+
+    public DatasetGenerator(int people, int forums, int topics, int posts,
+                            int topicLikes, int postLikes, double skew, long seed) {
+        if (people < 1 || forums < 1 || topics < 1 || posts < topics) {
+            throw new IllegalArgumentException("Need at least one person, forum and topic, "
+                    + "and a post per topic.");
+        }
+        if (skew < 0) {
+            throw new IllegalArgumentException("The skew cannot be negative.");
+        }
+        this.people = people;
+        this.forums = forums;
+        this.topics = topics;
+        this.posts = posts;
+        this.seed = seed;
+
+        topicPopularity = new Zipf(topics, skew);
+        forumPopularity = new Zipf(forums, skew);
+        personActivity = new Zipf(people, skew);
+
+        SplittableRandom random = new SplittableRandom(seed);
+
+        topicByRank = new int[topics];
+        for (int i = 0; i < topics; i++) {
+            int j = random.nextInt(i + 1);
+            topicByRank[i] = topicByRank[j];
+            topicByRank[j] = i + 1;
+        }
+
+        forumOf = new int[topics + 1];
+        for (int t = 1; t <= topics; t++) {
+            forumOf[t] = 1 + forumPopularity.sample(random);
+        }
+
+        postCounts = new int[topics + 1];
+        Arrays.fill(postCounts, 1, topics + 1, 1);
+        for (int i = topics; i < posts; i++) {
+            postCounts[randomTopic(random)]++;
+        }
+
+        // One like per person at most
+        topicLikeCounts = new int[topics + 1];
+        for (int i = 0; i < topicLikes; i++) {
+            int t = randomTopic(random);
+            if (topicLikeCounts[t] < people) {
+                topicLikeCounts[t]++;
+            }
+        }
+        postLikeCounts = new int[topics + 1];
+        for (int i = 0; i < postLikes; i++) {
+            postLikeCounts[randomTopic(random)]++;
+        }
+    }
+
+    /**
+     * Prints a line to the stream for every million posts loaded.
+     */
+    public void setProgress(PrintStream progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @return a topic id, picked with the popularity the data has.
+     */
+    public int randomTopic(SplittableRandom random) {
+        return topicByRank[topicPopularity.sample(random)];
+    }
+
+    /**
+     * @return the number of posts a topic has when loaded.
+     */
+    public int getPostCount(int topicId) {
+        return postCounts[topicId];
+    }
+
+    /**
+     * Loads the data into an empty schema, summary tables included.
+     * @param c a connection from BenchDatabase.openBulkConnection().
+     */
+    public void load(Connection c) throws SQLException {
+        // Separate from the planning, so loading does not change the plan
+        SplittableRandom random = new SplittableRandom(seed).split();
+        c.setAutoCommit(false);
+
+        // The data is consistent by construction, so skip checking it
+        try (Statement s = c.createStatement()) {
+            s.execute("SET unique_checks = 0, foreign_key_checks = 0");
+        }
+
+        try (Batch person = new Batch(c, "INSERT INTO Person (id, name, username, stuId) "
+                + "VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= people; i++) {
+                person.p.setInt(1, i);
+                person.p.setString(2, "Person " + i);
+                person.p.setString(3, BenchData.username(i));
+                person.p.setString(4, i % 2 == 0 ? "s" + i : null);
+                person.add();
+            }
+        }
+
+        try (Batch forum = new Batch(c, "INSERT INTO Forum (forum_id, title) VALUES (?, ?)")) {
+            for (int i = 1; i <= forums; i++) {
+                forum.p.setInt(1, i);
+                forum.p.setString(2, "Forum " + i);
+                forum.add();
+            }
+        }
+
+        try (Batch topic = new Batch(c, "INSERT INTO Topic (topic_id, forum_id, person_id, title) "
+                + "VALUES (?, ?, ?, ?)")) {
+            for (int t = 1; t <= topics; t++) {
+                topic.p.setInt(1, t);
+                topic.p.setInt(2, forumOf[t]);
+                topic.p.setInt(3, randomPerson(random));
+                topic.p.setString(4, "Topic " + t);
+                topic.add();
+            }
+        }
+
+        loadPosts(c, random);
+
+        try (Statement s = c.createStatement()) {
+            s.execute("SET unique_checks = 1, foreign_key_checks = 1");
+        }
+        c.commit();
+    }
+
+    /**
+     * Posts, likes and summaries, one topic at a time.
+     */
+    private void loadPosts(Connection c, SplittableRandom random) throws SQLException {
+        long span = posts * POST_INTERVAL / 1000;
+
+        int[] forumPosts = new int[forums + 1];
+        int[] forumLikes = new int[forums + 1];
+        int[] forumLastTopic = new int[forums + 1];
+        int[] forumLastPost = new int[forums + 1];
+        long[] forumLastAt = new long[forums + 1];
+
+        try (Batch post = new Batch(c, "INSERT INTO Post (post_id, topic_id, person_id, posted_at, "
+                     + "text, total_likes, post_number) VALUES (?, ?, ?, ?, ?, ?, ?)");
+             Batch postLike = new Batch(c, "INSERT INTO PostLikes (post_id, person_id) VALUES (?, ?)");
+             Batch topicLike = new Batch(c, "INSERT INTO TopicLikes (topic_id, person_id) VALUES (?, ?)");
+             Batch topicSummary = new Batch(c, "INSERT INTO TopicSummary (topic_id, forum_id, "
+                     + "post_count, like_count, last_post_id, last_post_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+
+            int postId = 0;
+            for (int t = 1; t <= topics; t++) {
+                int n = postCounts[t];
+
+                // Whole seconds, as DATETIME keeps them
+                long[] at = new long[n];
+                for (int i = 0; i < n; i++) {
+                    at[i] = FIRST_POST_AT + 1000 * random.nextLong(span);
+                }
+                Arrays.sort(at);
+
+                int[] likes = new int[n];
+                for (int i = 0; i < postLikeCounts[t]; i++) {
+                    int k = random.nextInt(n);
+                    if (likes[k] < people) {
+                        likes[k]++;
+                    }
+                }
+
+                for (int i = 0; i < n; i++) {
+                    postId++;
+                    post.p.setInt(1, postId);
+                    post.p.setInt(2, t);
+                    post.p.setInt(3, randomPerson(random));
+                    post.p.setTimestamp(4, new Timestamp(at[i]));
+                    post.p.setString(5, "Post " + postId + " in topic " + t + ".");
+                    post.p.setInt(6, likes[i]);
+                    post.p.setInt(7, i + 1);
+                    post.add();
+
+                    for (int person : distinctPeople(random, likes[i])) {
+                        postLike.p.setInt(1, postId);
+                        postLike.p.setInt(2, person);
+                        postLike.add();
+                    }
+
+                    if (progress != null && postId % PROGRESS_EVERY == 0) {
+                        progress.println(postId + " of " + posts + " posts.");
+                    }
+                }
+
+                for (int person : distinctPeople(random, topicLikeCounts[t])) {
+                    topicLike.p.setInt(1, t);
+                    topicLike.p.setInt(2, person);
+                    topicLike.add();
+                }
+
+                long lastAt = at[n - 1];
+                topicSummary.p.setInt(1, t);
+                topicSummary.p.setInt(2, forumOf[t]);
+                topicSummary.p.setInt(3, n);
+                topicSummary.p.setInt(4, topicLikeCounts[t]);
+                topicSummary.p.setInt(5, postId);
+                topicSummary.p.setTimestamp(6, new Timestamp(lastAt));
+                topicSummary.add();
+
+                // Latest by time then post id, as the API orders them
+                int f = forumOf[t];
+                forumPosts[f] += n;
+                forumLikes[f] += topicLikeCounts[t];
+                if (lastAt > forumLastAt[f] || (lastAt == forumLastAt[f] && postId > forumLastPost[f])) {
+                    forumLastTopic[f] = t;
+                    forumLastPost[f] = postId;
+                    forumLastAt[f] = lastAt;
+                }
+            }
+        }
+
+        try (Batch forumSummary = new Batch(c, "INSERT INTO ForumSummary (forum_id, post_count, "
+                + "like_count, last_topic_id, last_post_id, last_post_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int f = 1; f <= forums; f++) {
+                forumSummary.p.setInt(1, f);
+                forumSummary.p.setInt(2, forumPosts[f]);
+                forumSummary.p.setInt(3, forumLikes[f]);
+                if (forumLastTopic[f] == 0) {
+                    forumSummary.p.setNull(4, Types.INTEGER);
+                    forumSummary.p.setNull(5, Types.INTEGER);
+                    forumSummary.p.setNull(6, Types.TIMESTAMP);
+                } else {
+                    forumSummary.p.setInt(4, forumLastTopic[f]);
+                    forumSummary.p.setInt(5, forumLastPost[f]);
+                    forumSummary.p.setTimestamp(6, new Timestamp(forumLastAt[f]));
+                }
+                forumSummary.add();
+            }
+        }
+    }
+
+    private int randomPerson(SplittableRandom random) {
+        return 1 + personActivity.sample(random);
+    }
+
+    /**
+     * @return count different person ids, uniformly at random, in order.
+     */
+    private int[] distinctPeople(SplittableRandom random, int count) {
+        if (count == 0) {
+            return NONE;
+        }
+        // Floyd's algorithm: one draw per id chosen
+        Set<Integer> chosen = new HashSet<>();
+        for (int j = people - count + 1; j <= people; j++) {
+            int id = 1 + random.nextInt(j);
+            chosen.add(chosen.contains(id) ? j : id);
+        }
+        int[] ids = new int[count];
+        int i = 0;
+        for (int id : chosen) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * A Zipf distribution over 0..n-1, sampled by binary search of the
+     * cumulative probabilities.
+     */
+    static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += Math.pow(k + 1, -exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(i >= 0 ? i : -i - 1, cumulative.length - 1);
+        }
+    }
+
+    /**
+     * A JDBC batch that executes and commits every BATCH_SIZE rows, and
+     * once more when closed.
+     */
+    private static final class Batch implements AutoCloseable {
+        final PreparedStatement p;
+        private final Connection c;
+        private int pending;
+
+        Batch(Connection c, String sql) throws SQLException {
+            this.c = c;
+            this.p = c.prepareStatement(sql);
+        }
+
+        void add() throws SQLException {
+            p.addBatch();
+            if (++pending == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (pending > 0) {
+                p.executeBatch();
+                c.commit();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                p.close();
+            }
+        }
+    }
+
+    /**
+     * Loads the bb.bench.* sized data into the database at -Dbb.bench.url,
+     * replacing its schema.
+     */
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("bb.bench.url") == null) {
+            System.err.println("Set -Dbb.bench.url to the database to load; its tables are dropped.");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        BenchData data = BenchData.fromProperties();
+        try (BenchDatabase db = BenchDatabase.start();
+             Connection c = db.openBulkConnection()) {
+            data.getGenerator().setProgress(System.out);
+            data.load(c);
+        }
+        System.out.println(String.format("Loaded in %.1f s.", (System.nanoTime() - start) / 1e9));
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import uk.ac.bris.cs.databases.util.LatencyHistogram;
+import uk.ac.bris.cs.databases.web.Server;
+
+/**
+ * Load test of the whole stack: HTTP, handlers, templates and database.
+ *
+ * Boots the Server in this process against a freshly loaded BenchDatabase
+ * (or drives an existing server given by -Dbb.load.target, whose data must
+ * have been loaded with the same bb.bench.* sizes), then sends requests
+ * from a configurable mix at a fixed average rate.
+ *
+ * The load is open: requests are started on schedule whether or not
+ * earlier ones have finished, with exponentially distributed gaps, and
+ * latency is measured from the scheduled start. A server that falls behind
+ * therefore shows it in the latencies, rather than the test slowing down
+ * to match it.
+ *
+ * The report goes to stdout and, as JSON, to -Dbb.load.report.
+ */
+public class LoadTest {
+
+    private static final String TARGET = System.getProperty("bb.load.target");
+    private static final double RATE = Double.parseDouble(System.getProperty("bb.load.rate", "200"));
+    private static final int DURATION = Integer.getInteger("bb.load.durationSeconds", 60);
+    private static final int WARMUP = Integer.getInteger("bb.load.warmupSeconds", 10);
+    private static final int CLIENTS = Integer.getInteger("bb.load.clients", 64);
+    private static final String MIX = System.getProperty("bb.load.mix",
+            "forums=15,forum=15,topic=50,createpost=5,likepost=15");
+    private static final String REPORT = System.getProperty("bb.load.report", "target/load-report.json");
+
+    /**
+     * The kinds of request in the mix.
+     */
+    enum Route {
+        FORUMS("forums"),
+        FORUM("forum"),
+        TOPIC("topic"),
+        CREATEPOST("createpost"),
+        LIKEPOST("likepost");
+
+        final String name;
+
+        Route(String name) {
+            this.name = name;
+        }
+
+        Request next(BenchData data, SplittableRandom random) {
+            switch (this) {
+                case FORUMS:
+                    return new Request(this, "/forums", null, null);
+                case FORUM:
+                    return new Request(this, "/forum/" + data.randomForum(random), null, null);
+                case TOPIC:
+                    return new Request(this, "/topic/" + data.randomTopic(random), null, null);
+                case CREATEPOST:
+                    return new Request(this, "/createpost", data.randomUsername(random),
+                            "topic=" + data.randomTopic(random) + "&text=Load+test+reply.");
+                case LIKEPOST:
+                    long topic = data.randomTopic(random);
+                    return new Request(this, "/likePost/" + topic + "/"
+                            + data.randomPostNumber(random, topic) + "/"
+                            + (random.nextBoolean() ? 1 : 0),
+                            data.randomUsername(random), null);
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        static Route named(String name) {
+            for (Route r : values()) {
+                if (r.name.equals(name)) {
+                    return r;
+                }
+            }
+            throw new IllegalArgumentException("Unknown route in bb.load.mix: " + name);
+        }
+    }
+
+    /**
+     * One request: a GET, or a form POST if there is a body.
+     */
+    static final class Request {
+        final Route route;
+        final String path;
+        final String user;
+        final String body;
+
+        Request(Route route, String path, String user, String body) {
+            this.route = route;
+            this.path = path;
+            this.user = user;
+            this.body = body;
+        }
+    }
+
+    /**
+     * What was measured for one route.
+     */
+    static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+    }
+
+    private final String target;
+    private final BenchData data;
+    private final Map<Route, Stats> stats = new LinkedHashMap<>();
+    private final Stats total = new Stats();
+
+    // Cumulative weights of the routes in the mix
+    private final Route[] routes;
+    private final int[] weights;
+
+    LoadTest(String target, BenchData data, String mix) {
+        this.target = target;
+        this.data = data;
+
+        String[] parts = mix.split(",");
+        routes = new Route[parts.length];
+        weights = new int[parts.length];
+        int sum = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String[] kv = parts[i].trim().split("=");
+            routes[i] = Route.named(kv[0].trim());
+            sum += Integer.parseInt(kv[1].trim());
+            weights[i] = sum;
+            stats.put(routes[i], new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Keep a connection per client alive between requests
+        System.setProperty("http.maxConnections", Integer.toString(CLIENTS));
+
+        BenchData data = BenchData.fromProperties();
+        BenchDatabase db = null;
+        Server server = null;
+        String target = TARGET;
+
+        if (target == null) {
+            // A line per request would bury the report
+            if (System.getProperty("bb.accessLog") == null) {
+                System.setProperty("bb.accessLog", "off");
+            }
+            db = BenchDatabase.start();
+            try (Connection c = db.openBulkConnection()) {
+                data.load(c);
+            }
+            Server.configure(db.getUrl());
+            server = new Server();
+            server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+            target = "http://localhost:" + server.getListeningPort();
+        }
+
+        try {
+            LoadTest test = new LoadTest(target, data, MIX);
+            test.run();
+            test.report(System.out);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+            if (db != null) {
+                db.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    void run() throws InterruptedException {
+        System.out.println("Load test of " + target + ": " + RATE + " requests/s for "
+                + WARMUP + " s warmup and " + DURATION + " s measured, "
+                + CLIENTS + " clients.");
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS, r -> {
+            Thread t = new Thread(r, "load-client");
+            t.setDaemon(true);
+            return t;
+        });
+
+        SplittableRandom random = new SplittableRandom(Long.getLong("bb.bench.seed", 42));
+        double meanGap = TimeUnit.SECONDS.toNanos(1) / RATE;
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(WARMUP);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(DURATION);
+
+        long next = start;
+        while (next < end) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Request request = pick(random).next(data, random);
+            long scheduled = next;
+            clients.execute(() -> send(request, scheduled, scheduled >= measureFrom));
+
+            next += (long) (-Math.log(1 - random.nextDouble()) * meanGap);
+        }
+
+        clients.shutdown();
+        clients.awaitTermination(2, TimeUnit.MINUTES);
+    }
+
+    private Route pick(SplittableRandom random) {
+        int r = random.nextInt(weights[weights.length - 1]);
+        for (int i = 0; i < weights.length; i++) {
+            if (r < weights[i]) {
+                return routes[i];
+            }
+        }
+        return routes[routes.length - 1];
+    }
+
+    private void send(Request request, long scheduled, boolean measured) {
+        boolean ok = false;
+        long bytes = 0;
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(target + request.path).openConnection();
+            conn.setConnectTimeout(10000);
+            conn.setReadTimeout(30000);
+            if (request.user != null) {
+                conn.setRequestProperty("Cookie", "user=" + request.user);
+            }
+            if (request.body != null) {
+                conn.setRequestMethod("POST");
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(request.body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int status = conn.getResponseCode();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in != null) {
+                // Read it all, so the latency includes sending the page
+                try (InputStream body = in) {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = body.read(buf)) != -1) {
+                        bytes += n;
+                    }
+                }
+            }
+            ok = status == 200;
+        } catch (IOException e) {
+            // Counted as an error
+        }
+
+        if (measured) {
+            long latency = System.nanoTime() - scheduled;
+            for (Stats s : new Stats[] { stats.get(request.route), total }) {
+                s.latency.record(latency);
+                s.bytes.add(bytes);
+                if (!ok) {
+                    s.errors.increment();
+                }
+            }
+        }
+    }
+
+    void report(PrintStream out) throws IOException {
+        out.println(String.format(Locale.ROOT, "%-12s %9s %8s %9s %9s %9s %9s",
+                "route", "requests", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Map.Entry<Route, Stats> e : stats.entrySet()) {
+            out.println(line(e.getKey().name, e.getValue()));
+        }
+        out.println(line("total", total));
+        out.println(String.format(Locale.ROOT, "Throughput %.1f requests/s, error rate %.3f%%.",
+                total.latency.getCount() / (double) DURATION,
+                100.0 * errorRate(total)));
+
+        File report = new File(REPORT);
+        if (report.getParentFile() != null) {
+            report.getParentFile().mkdirs();
+        }
+        try (Writer w = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8)) {
+            w.write(json());
+        }
+        out.println("Report written to " + report + ".");
+    }
+
+    private static String line(String name, Stats s) {
+        return String.format(Locale.ROOT, "%-12s %9d %8d %9.2f %9.2f %9.2f %9.2f",
+                name, s.latency.getCount(), s.errors.sum(),
+                millis(s.latency.getValueAtPercentile(50)),
+                millis(s.latency.getValueAtPercentile(99)),
+                millis(s.latency.getValueAtPercentile(99.9)),
+                millis(s.latency.getMax()));
+    }
+
+    private String json() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"target\": \"").append(target).append("\",\n");
+        sb.append(String.format(Locale.ROOT, "  \"rate\": %.3f,\n", RATE));
+        sb.append("  \"warmupSeconds\": ").append(WARMUP).append(",\n");
+        sb.append("  \"durationSeconds\": ").append(DURATION).append(",\n");
+        sb.append("  \"clients\": ").append(CLIENTS).append(",\n");
+        sb.append("  \"mix\": \"").append(MIX).append("\",\n");
+        sb.append("  \"total\": ").append(json(total)).append(",\n");
+        sb.append("  \"routes\": {");
+        String separator = "\n";
+        for (Map.Entry<Route, Stats> e : stats.entrySet()) {
+            sb.append(separator).append("    \"").append(e.getKey().name).append("\": ")
+              .append(json(e.getValue()));
+            separator = ",\n";
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    private static String json(Stats s) {
+        LatencyHistogram h = s.latency;
+        return String.format(Locale.ROOT,
+                "{\"requests\": %d, \"errors\": %d, \"errorRate\": %.6f, "
+                + "\"throughput\": %.3f, \"bytes\": %d, "
+                + "\"latencyMillis\": {\"mean\": %.3f, \"p50\": %.3f, \"p90\": %.3f, "
+                + "\"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}}",
+                h.getCount(), s.errors.sum(), errorRate(s),
+                h.getCount() / (double) DURATION, s.bytes.sum(),
+                h.getMean() / 1e6,
+                millis(h.getValueAtPercentile(50)),
+                millis(h.getValueAtPercentile(90)),
+                millis(h.getValueAtPercentile(99)),
+                millis(h.getValueAtPercentile(99.9)),
+                millis(h.getMax()));
+    }
+
+    private static double errorRate(Stats s) {
+        long n = s.latency.getCount();
+        return n == 0 ? 0 : s.errors.sum() / (double) n;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
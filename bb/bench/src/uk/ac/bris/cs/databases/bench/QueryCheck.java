@@ -0,0 +1,254 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.cwk3.API;
+import uk.ac.bris.cs.databases.cwk3.ConnectionPool;
+import uk.ac.bris.cs.databases.cwk3.QueryCounter;
+
+/**
+ * Checks the plans of the API's hot queries against a loaded BenchDatabase.
+ * Each API method is called with statement recording on, and the query it
+ * runs is put through EXPLAIN with the same parameters. The plan must show
+ * its table read through the index the query was written for, and no
+ * filesort or temporary table where that index gives the order. The forum
+ * listings must also answer in one statement however many forums there
+ * are. Exits with status 1 if any check fails.
+ */
+public final class QueryCheck {
+
+    // The page size the web handlers use
+    private static final int PAGE_SIZE = 50;
+
+    private QueryCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        BenchData data = BenchData.fromProperties();
+        SplittableRandom random = new SplittableRandom(Long.getLong("bb.bench.seed", 42));
+        long topic = data.randomTopic(random);
+        int post = data.randomPostNumber(random, topic);
+        long forum = data.randomForum(random);
+        String username = data.randomUsername(random);
+        String forumCursor = data.randomForumCursor(random);
+
+        int failed = 0;
+        try (BenchDatabase db = BenchDatabase.start();
+             Connection c = db.openBulkConnection()) {
+            data.load(c);
+            analyze(c);
+
+            try (ConnectionPool pool = new ConnectionPool(db.getUrl(), 1, 1, 5000, 0, 64)) {
+                pool.setCountingQueries(true);
+                API api = new API(pool);
+
+                List<Plan> plans = Arrays.asList(
+                    new Plan("getPersonView", () -> api.getPersonView(username),
+                            "FROM Person WHERE", "Person", "username", false),
+                    new Plan("getForum", () -> api.getForum(forum),
+                            "FROM Topic", "Topic", "idx_topic_forum_title", false),
+                    new Plan("getSimpleTopic", () -> api.getSimpleTopic(topic, 0, PAGE_SIZE),
+                            "FROM Post", "Post", "uq_post_topic_number", false),
+                    new Plan("getTopic", () -> api.getTopic(topic, 0, PAGE_SIZE),
+                            "FROM Post", "Post", "uq_post_topic_number", false),
+                    new Plan("getLatestPost", () -> api.getLatestPost(topic),
+                            "FROM TopicSummary", "TopicSummary", "PRIMARY", false),
+                    new Plan("likePost", () -> api.likePost(username, topic, post, true),
+                            "SELECT post_id FROM Post", "Post", "uq_post_topic_number", false),
+                    new Plan("getLikers", () -> api.getLikers(topic),
+                            "FROM TopicLikes", "TopicLikes", "PRIMARY", false),
+                    // Sorted by the title of each liked topic, which no index on
+                    // TopicLikes can give
+                    new Plan("getAdvancedPersonView", () -> api.getAdvancedPersonView(username),
+                            "FROM TopicLikes", "TopicLikes", "idx_topiclikes_person", true),
+                    new Plan("getAdvancedForum", () -> api.getAdvancedForum(forum, null, PAGE_SIZE),
+                            "FROM TopicSummary", "TopicSummary", "idx_topicsummary_forum_recent", false),
+                    new Plan("getAdvancedForum after a cursor",
+                            () -> api.getAdvancedForum(forum, forumCursor, PAGE_SIZE),
+                            "FROM TopicSummary", "TopicSummary", "idx_topicsummary_forum_recent", false)
+                );
+
+                for (Plan plan : plans) {
+                    if (!report(plan.name, plan.check(c))) {
+                        failed++;
+                    }
+                }
+
+                // One round-trip each, not one per forum
+                if (!report("getForums statements", statements(api::getForums, 1))) {
+                    failed++;
+                }
+                if (!report("getSimpleForums statements", statements(api::getSimpleForums, 1))) {
+                    failed++;
+                }
+                if (!report("getAdvancedForums statements", statements(api::getAdvancedForums, 1))) {
+                    failed++;
+                }
+            }
+        }
+
+        System.out.println(failed == 0 ? "All checks passed." : failed + " checks failed.");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Prints the outcome of one check.
+     * @return whether it passed.
+     */
+    private static boolean report(String name, List<String> problems) {
+        System.out.println((problems.isEmpty() ? "ok    " : "FAIL  ") + name);
+        for (String problem : problems) {
+            System.out.println("      " + problem);
+        }
+        return problems.isEmpty();
+    }
+
+    /**
+     * Makes an API call on this thread and counts the statements it runs.
+     * @return what is wrong; empty if it succeeded within max statements.
+     */
+    private static List<String> statements(Supplier<? extends Result<?>> call, long max) {
+        List<String> problems = new ArrayList<>();
+        QueryCounter queries = QueryCounter.current();
+        long before = queries.getStatements();
+
+        Result<?> r = call.get();
+        long ran = queries.getStatements() - before;
+
+        if (!r.isSuccess()) {
+            problems.add("call failed: " + r.getMessage());
+        }
+        if (ran > max) {
+            problems.add(ran + " statements, expected at most " + max);
+        }
+        return problems;
+    }
+
+    /**
+     * Brings the index statistics up to date after the bulk load, so the
+     * plans are the ones a long-running database would get.
+     */
+    private static void analyze(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute("ANALYZE TABLE Person, Forum, Topic, Post, TopicLikes, PostLikes, " +
+                    "ForumSummary, TopicSummary");
+        }
+    }
+
+    /**
+     * An API call and how its query should be planned.
+     */
+    private static final class Plan {
+        final String name;
+        final Supplier<? extends Result<?>> call;
+        final String query;
+        final String table;
+        final String key;
+        final boolean sorts;
+
+        /**
+         * @param name what is checked.
+         * @param call the API call, made on a pool that counts queries.
+         * @param query text that picks out the query among the statements
+         * the call runs, e.g. "FROM Post".
+         * @param table the table (or alias) it is driven from.
+         * @param key the index that table must be read through.
+         * @param sorts whether a filesort or temporary table is expected.
+         */
+        Plan(String name, Supplier<? extends Result<?>> call, String query,
+             String table, String key, boolean sorts) {
+            this.name = name;
+            this.call = call;
+            this.query = query;
+            this.table = table;
+            this.key = key;
+            this.sorts = sorts;
+        }
+
+        /**
+         * Makes the call, then explains the statements it ran that match.
+         * @return what is wrong with the call or the plans; empty if nothing.
+         */
+        List<String> check(Connection c) throws SQLException {
+            List<String> problems = new ArrayList<>();
+
+            QueryCounter queries = QueryCounter.current();
+            queries.startRecording();
+            Result<?> r;
+            List<QueryCounter.Executed> executed;
+            try {
+                r = call.get();
+            } finally {
+                executed = queries.stopRecording();
+            }
+            if (!r.isSuccess()) {
+                problems.add("call failed: " + r.getMessage());
+            }
+
+            int matched = 0;
+            for (QueryCounter.Executed e : executed) {
+                if (e.getSql().contains(query)) {
+                    matched++;
+                    explain(c, e, problems);
+                }
+            }
+            if (matched == 0) {
+                problems.add("no statement with \"" + query + "\" was run");
+            }
+            return problems;
+        }
+
+        private void explain(Connection c, QueryCounter.Executed e,
+                             List<String> problems) throws SQLException {
+            boolean found = false;
+
+            try (PreparedStatement p = c.prepareStatement("EXPLAIN " + e.getSql())) {
+                List<Object> params = e.getParameters();
+                for (int i = 0; i < params.size(); i++) {
+                    p.setObject(i + 1, params.get(i));
+                }
+                try (ResultSet r = p.executeQuery()) {
+                    while (r.next()) {
+                        String rowTable = r.getString("table");
+                        String rowKey = r.getString("key");
+                        String extra = r.getString("Extra");
+
+                        if (table.equals(rowTable)) {
+                            found = true;
+                            if (!key.equals(rowKey)) {
+                                problems.add(table + " read through "
+                                        + (rowKey == null ? "a full scan" : rowKey) + ", not " + key);
+                            }
+                        }
+                        if (!sorts && extra != null) {
+                            if (extra.contains("Using filesort")) {
+                                problems.add(rowTable + ": Using filesort");
+                            }
+                            if (extra.contains("Using temporary")) {
+                                problems.add(rowTable + ": Using temporary");
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (!found) {
+                problems.add("no " + table + " in the plan");
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.bris.cs.databases.api.AdvancedForumSummaryView;
+import uk.ac.bris.cs.databases.api.AdvancedForumView;
+import uk.ac.bris.cs.databases.api.AdvancedPersonView;
+import uk.ac.bris.cs.databases.api.ForumStreamView;
+import uk.ac.bris.cs.databases.api.ForumSummaryView;
+import uk.ac.bris.cs.databases.api.ForumView;
+import uk.ac.bris.cs.databases.api.PersonView;
+import uk.ac.bris.cs.databases.api.PostView;
+import uk.ac.bris.cs.databases.api.ResultCursor;
+import uk.ac.bris.cs.databases.api.SimpleForumSummaryView;
+import uk.ac.bris.cs.databases.api.SimpleTopicView;
+import uk.ac.bris.cs.databases.api.TopicView;
+
+import static uk.ac.bris.cs.databases.bench.BenchState.check;
+
+/**
+ * Every read method of APIProvider. Throughput gives calls per
+ * millisecond, SampleTime the latency percentiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ReadBenchmarks {
+
+    // The page size the web handlers use
+    private static final int PAGE_SIZE = 50;
+
+    @Benchmark
+    public Map<String, String> getUsers(BenchState s) {
+        return check(s.api.getUsers());
+    }
+
+    @Benchmark
+    public void streamUsers(BenchState s, Blackhole bh) {
+        drain(check(s.api.streamUsers()), bh);
+    }
+
+    @Benchmark
+    public PersonView getPersonView(BenchState s, BenchState.Picks p) {
+        return check(s.api.getPersonView(s.data.randomUsername(p.random)));
+    }
+
+    @Benchmark
+    public List<SimpleForumSummaryView> getSimpleForums(BenchState s) {
+        return check(s.api.getSimpleForums());
+    }
+
+    @Benchmark
+    public void streamSimpleForums(BenchState s, Blackhole bh) {
+        drain(check(s.api.streamSimpleForums()), bh);
+    }
+
+    @Benchmark
+    public List<ForumSummaryView> getForums(BenchState s) {
+        return check(s.api.getForums());
+    }
+
+    @Benchmark
+    public ForumView getForum(BenchState s, BenchState.Picks p) {
+        return check(s.api.getForum(s.data.randomForum(p.random)));
+    }
+
+    @Benchmark
+    public void streamForum(BenchState s, BenchState.Picks p, Blackhole bh) {
+        try (ForumStreamView forum = check(s.api.streamForum(s.data.randomForum(p.random)))) {
+            drain(forum.getTopics(), bh);
+        }
+    }
+
+    @Benchmark
+    public SimpleTopicView getSimpleTopic(BenchState s, BenchState.Picks p) {
+        return check(s.api.getSimpleTopic(s.data.randomTopic(p.random)));
+    }
+
+    @Benchmark
+    public SimpleTopicView getSimpleTopicPage(BenchState s, BenchState.Picks p) {
+        long topic = s.data.randomTopic(p.random);
+        return check(s.api.getSimpleTopic(topic,
+                s.data.randomTopicCursor(p.random, topic), PAGE_SIZE));
+    }
+
+    @Benchmark
+    public PostView getLatestPost(BenchState s, BenchState.Picks p) {
+        return check(s.api.getLatestPost(s.data.randomTopic(p.random)));
+    }
+
+    @Benchmark
+    public Integer countPostsInTopic(BenchState s, BenchState.Picks p) {
+        return check(s.api.countPostsInTopic(s.data.randomTopic(p.random)));
+    }
+
+    @Benchmark
+    public List<PersonView> getLikers(BenchState s, BenchState.Picks p) {
+        return check(s.api.getLikers(s.data.randomTopic(p.random)));
+    }
+
+    @Benchmark
+    public void streamLikers(BenchState s, BenchState.Picks p, Blackhole bh) {
+        drain(check(s.api.streamLikers(s.data.randomTopic(p.random))), bh);
+    }
+
+    @Benchmark
+    public TopicView getTopic(BenchState s, BenchState.Picks p) {
+        return check(s.api.getTopic(s.data.randomTopic(p.random)));
+    }
+
+    @Benchmark
+    public TopicView getTopicPage(BenchState s, BenchState.Picks p) {
+        long topic = s.data.randomTopic(p.random);
+        return check(s.api.getTopic(topic,
+                s.data.randomTopicCursor(p.random, topic), PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<AdvancedForumSummaryView> getAdvancedForums(BenchState s) {
+        return check(s.api.getAdvancedForums());
+    }
+
+    @Benchmark
+    public AdvancedPersonView getAdvancedPersonView(BenchState s, BenchState.Picks p) {
+        return check(s.api.getAdvancedPersonView(s.data.randomUsername(p.random)));
+    }
+
+    @Benchmark
+    public AdvancedForumView getAdvancedForum(BenchState s, BenchState.Picks p) {
+        return check(s.api.getAdvancedForum(s.data.randomForum(p.random)));
+    }
+
+    @Benchmark
+    public AdvancedForumView getAdvancedForumPage(BenchState s, BenchState.Picks p) {
+        return check(s.api.getAdvancedForum(s.data.randomForum(p.random),
+                s.data.randomForumCursor(p.random), PAGE_SIZE));
+    }
+
+    private static <T> void drain(ResultCursor<T> cursor, Blackhole bh) {
+        try (ResultCursor<T> c = cursor) {
+            while (c.hasNext()) {
+                bh.consume(c.next());
+            }
+        }
+    }
+}
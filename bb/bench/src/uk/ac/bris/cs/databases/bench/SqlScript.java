@@ -0,0 +1,45 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Runs a SQL file such as forum_schema.sql over JDBC. Good enough for our
+ * own scripts: comments are dropped and statements split on semicolons,
+ * so a semicolon inside a string literal is not supported.
+ */
+public final class SqlScript {
+
+    private SqlScript() {}
+
+    /**
+     * Runs every statement in a script.
+     * @param c
+     * @param script
+     * @throws IOException if the script cannot be read.
+     * @throws SQLException on the first statement that fails.
+     */
+    public static void run(Connection c, File script) throws IOException, SQLException {
+        String sql = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+        sql = sql.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("(?m)--.*$", "");
+
+        try (Statement s = c.createStatement()) {
+            for (String statement : sql.split(";")) {
+                if (!statement.trim().isEmpty()) {
+                    s.execute(statement);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.bris.cs.databases.api.Result;
+
+/**
+ * Every write method of APIProvider. The data grows as they run, so the
+ * numbers are for a database a little larger than the one loaded.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class WriteBenchmarks {
+
+    // Unique names for new people and forums, across threads
+    private static final AtomicLong NEXT = new AtomicLong();
+
+    /**
+     * BenchState.check for the write methods, which return a raw Result.
+     */
+    private static Object check(Result<?> r) {
+        return BenchState.check(r);
+    }
+
+    @Benchmark
+    public Object addNewPerson(BenchState s) {
+        long n = NEXT.incrementAndGet();
+        return check(s.api.addNewPerson("Bench person " + n, "b" + n, null));
+    }
+
+    @Benchmark
+    public Object createForum(BenchState s) {
+        return check(s.api.createForum("Bench forum " + NEXT.incrementAndGet()));
+    }
+
+    @Benchmark
+    public Object createTopic(BenchState s, BenchState.Picks p) {
+        return check(s.api.createTopic(s.data.randomForum(p.random),
+                s.data.randomUsername(p.random), "Bench topic", "First post."));
+    }
+
+    @Benchmark
+    public Object createPost(BenchState s, BenchState.Picks p) {
+        return check(s.api.createPost(s.data.randomTopic(p.random),
+                s.data.randomUsername(p.random), "A reply."));
+    }
+
+    @Benchmark
+    public Object likeTopic(BenchState s, BenchState.Picks p) {
+        return check(s.api.likeTopic(s.data.randomUsername(p.random),
+                s.data.randomTopic(p.random), p.random.nextBoolean()));
+    }
+
+    @Benchmark
+    public Object likePost(BenchState s, BenchState.Picks p) {
+        long topic = s.data.randomTopic(p.random);
+        return check(s.api.likePost(s.data.randomUsername(p.random), topic,
+                s.data.randomPostNumber(p.random, topic), p.random.nextBoolean()));
+    }
+}
@@ -19,6 +19,12 @@
 </div>
 </#list>
 
+<#if data.nextAfter??>
+<div class="section">
+<p><a href="?after=${data.nextAfter}">Next page</a></p>
+</div>
+</#if>
+
 <p><a href="/forum/${data.id}">default view</a> advanced view</p>
 
 <div class="section alt">
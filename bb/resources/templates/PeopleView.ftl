@@ -4,8 +4,8 @@
 
 <div class="section">
 <#list data.data as p>
-<p><span class="key"><a href="/person/${p.key}">${p.value} [${p.key}]</a></span></p>
-<p><a href="/login/${p.key}">(log in as ${p.value})</a></p>
+<p><span class="key"><a href="/person/${p.username}">${p.name} [${p.username}]</a></span></p>
+<p><a href="/login/${p.username}">(log in as ${p.name})</a></p>
 </#list>
 <p><a href="/login">(log out)</a></p>
 </div>
@@ -22,6 +22,12 @@ ${p.text?html}
 </div>
 </#list>
 
+<#if data.nextAfter != 0>
+<div class="section">
+<p><a href="?after=${data.nextAfter?c}">Next page</a></p>
+</div>
+</#if>
+
 <div class="section alt">
 <p>
 <#if session??>
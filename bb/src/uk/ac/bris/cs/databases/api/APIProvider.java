@@ -39,6 +39,16 @@ public interface APIProvider {
      */
     public Result<Map<String, String>> getUsers();
     
+    /**
+     * Get all users in the system ordered by username, read from the
+     * database as they are iterated.
+     * @return A cursor over the users, to be closed once done with;
+     * fatal on database errors.
+     * 
+     * Used by: /people (PeopleHandler)
+     */
+    public Result<ResultCursor<PersonView>> streamUsers();
+    
     /**
      * Get a PersonView for the person with the given username.
      * @param username - the username to search for, cannot be empty.
@@ -81,6 +91,15 @@ public interface APIProvider {
      * Used by: /forums0 (SimpleForumsHandler)
      */
     public Result<List<SimpleForumSummaryView>> getSimpleForums();
+    
+    /**
+     * Streaming version of getSimpleForums.
+     * @return A cursor over the forums ordered by title, to be closed once
+     * done with; fatal on database errors.
+     * 
+     * Used by: /forums0 (SimpleForumsHandler)
+     */
+    public Result<ResultCursor<SimpleForumSummaryView>> streamSimpleForums();
 
     /**
      * Create a new forum.
@@ -118,6 +137,16 @@ public interface APIProvider {
      */
     public Result<ForumView> getForum(long id);
     
+    /**
+     * Streaming version of getForum: the topics are read as they are listed.
+     * @param id - the id of the forum to get.
+     * @return A view of this forum if it exists, to be closed once done
+     * with; otherwise failure, or fatal on database errors.
+     * 
+     * Used by: /forum/:id (ForumHandler)
+     */
+    public Result<ForumStreamView> streamForum(long id);
+    
     /**
      * Get a simplified view of a topic.
      * @param topicId - the topic to get.
@@ -128,6 +157,20 @@ public interface APIProvider {
      * Used by: /topic0/:id (SimpleTopicHandler)
      */
     public Result<SimpleTopicView> getSimpleTopic(long topicId);
+    
+    /**
+     * Get one page of a simplified view of a topic.
+     * @param topicId - the topic to get.
+     * @param after - the number of the last post on the previous page,
+     * or 0 for the first page.
+     * @param pageSize - the maximum number of posts on the page.
+     * @return The page if the topic exists and has posts after the given
+     * one, otherwise failure or fatal on database errors. The view's
+     * nextAfter is the cursor for the following page, 0 if there is none.
+     * 
+     * Used by: /topic0/:id?after=:postNumber (SimpleTopicHandler)
+     */
+    public Result<SimpleTopicView> getSimpleTopic(long topicId, long after, int pageSize);
 
     /**
      * Get the latest post in a topic.
@@ -240,6 +283,17 @@ public interface APIProvider {
      */
     public Result<List<PersonView>> getLikers(long topicId);
     
+    /**
+     * Streaming version of getLikers.
+     * @param topicId The topic id. Must exist.
+     * @return A cursor over the people who liked the topic ordered by name,
+     * to be closed once done with, if the topic exists; failure if it does
+     * not, fatal in case of database errors.
+     * 
+     * Not used in web interface.
+     */
+    public Result<ResultCursor<PersonView>> streamLikers(long topicId);
+    
     /**
      * Get the detailed view of a topic.
      * method, as it does not require paging.
@@ -251,6 +305,20 @@ public interface APIProvider {
      * Used by: /topic/:id (TopicHandler)
      */
     public Result<TopicView> getTopic(long topicId);
+    
+    /**
+     * Get one page of the detailed view of a topic.
+     * @param topicId - the topic to get.
+     * @param after - the number of the last post on the previous page,
+     * or 0 for the first page.
+     * @param pageSize - the maximum number of posts on the page.
+     * @return The page if the topic exists and has posts after the given
+     * one, otherwise failure (or fatal on database errors). The view's
+     * nextAfter is the cursor for the following page, 0 if there is none.
+     * 
+     * Used by: /topic/:id?after=:postNumber (TopicHandler)
+     */
+    public Result<TopicView> getTopic(long topicId, long after, int pageSize);
 
     /*
      * B.2 "Stuff with lots of joins"
@@ -292,4 +360,18 @@ public interface APIProvider {
      * Used by: /forum2/:id (AdvancedForumHandler)
      */
     public Result<AdvancedForumView> getAdvancedForum(long id);
+    
+    /**
+     * Get one page of the detailed view of a single forum, advanced version.
+     * @param id - the id of the forum to get.
+     * @param after - the nextAfter cursor of the previous page,
+     * or null for the first page.
+     * @param pageSize - the maximum number of topics on the page.
+     * @return A view of this forum if it exists, otherwise failure (also
+     * for a malformed cursor). The view's nextAfter is the cursor for the
+     * following page, null if there is none.
+     * 
+     * Used by: /forum2/:id?after=:cursor (AdvancedForumHandler)
+     */
+    public Result<AdvancedForumView> getAdvancedForum(long id, String after, int pageSize);
 }
@@ -19,12 +19,25 @@ public class AdvancedForumView {
      */
     private final List<TopicSummaryView> topics;
 
+    /* The cursor for the page of topics after this one,
+     * or null if this is the last page.
+     */
+    private final String nextAfter;
+
     public AdvancedForumView(long id,
                      String title,
                      List<TopicSummaryView> topics) {
+        this(id, title, topics, null);
+    }
+
+    public AdvancedForumView(long id,
+                     String title,
+                     List<TopicSummaryView> topics,
+                     String nextAfter) {
         this.id = id;
         this.title = title;
         this.topics = topics;
+        this.nextAfter = nextAfter;
     }
 
     /**
@@ -47,5 +60,11 @@ public class AdvancedForumView {
     public long getId() {
         return id;
     }
-    
+
+    /**
+     * @return the cursor for the next page, or null if there is none
+     */
+    public String getNextAfter() {
+        return nextAfter;
+    }
 }
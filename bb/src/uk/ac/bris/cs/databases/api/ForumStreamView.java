@@ -0,0 +1,57 @@
+package uk.ac.bris.cs.databases.api;
+
+import uk.ac.bris.cs.databases.util.Params;
+
+/**
+ * Detail view of a single forum whose topics are read as they are listed.
+ * Same as ForumView otherwise. Close it to release the topics cursor.
+ */
+public class ForumStreamView implements AutoCloseable {
+
+    /* The id of this forum. */
+    private final long id;
+
+    /* The title of this forum. */
+    private final String title;
+
+    /* The topics in this forum, ordered by title. */
+    private final ResultCursor<SimpleTopicSummaryView> topics;
+
+    public ForumStreamView(long id,
+                           String title,
+                           ResultCursor<SimpleTopicSummaryView> topics) {
+
+        Params.cannotBeEmpty(title);
+        Params.cannotBeNull(topics);
+
+        this.id = id;
+        this.title = title;
+        this.topics = topics;
+    }
+
+    /**
+     * @return the title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the topics
+     */
+    public ResultCursor<SimpleTopicSummaryView> getTopics() {
+        return topics;
+    }
+
+    /**
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public void close() {
+        topics.close();
+    }
+}
@@ -0,0 +1,18 @@
+package uk.ac.bris.cs.databases.api;
+
+import java.util.Iterator;
+
+/**
+ * The rows of a query, read from the database as they are iterated instead
+ * of all at once. A cursor holds on to a database connection until it is
+ * closed, so it must be closed once done with; iterating to the end closes
+ * it as well.
+ *
+ * Database errors while iterating are thrown as IllegalStateException.
+ * @param <T> the view each row is mapped to.
+ */
+public interface ResultCursor<T> extends Iterator<T>, AutoCloseable {
+
+    @Override
+    public void close();
+}
@@ -18,8 +18,18 @@ public class SimpleTopicView {
     /* The posts in this topic, in the order that they were created. */
     private final List<SimplePostView> posts;
     
+    /* The number of the last post on this page if another page follows,
+     * 0 if this is the last page.
+     */
+    private final long nextAfter;
+    
     public SimpleTopicView(long topicId, String title,
             List<SimplePostView> posts) {
+        this(topicId, title, posts, 0);
+    }
+    
+    public SimpleTopicView(long topicId, String title,
+            List<SimplePostView> posts, long nextAfter) {
         
         Params.cannotBeEmpty(title);
         Params.cannotBeEmpty(posts);
@@ -27,6 +37,7 @@ public class SimpleTopicView {
         this.topicId = topicId;
         this.title = title;
         this.posts = posts;
+        this.nextAfter = nextAfter;
     }
 
     public List<SimplePostView> getPosts() {
@@ -47,4 +58,11 @@ public class SimpleTopicView {
     public String getTitle() {
         return title;
     }  
+
+    /**
+     * @return the cursor for the next page, or 0 if there is none
+     */
+    public long getNextAfter() {
+        return nextAfter;
+    }
 }
@@ -21,12 +21,22 @@ public class TopicView {
     
     /* The posts in this topic, in the order that they were created.
      * If this is the whole topic then this list contains all posts,
-     * otherwise it contains maximal 10 of them.
+     * otherwise it contains one page of them.
      */
     private final List<PostView> posts;
     
+    /* The number of the last post on this page if another page follows,
+     * 0 if this is the last page.
+     */
+    private final long nextAfter;
+    
     public TopicView(long forumId, long topicId, String forumName, String title,
             List<PostView> posts) {
+        this(forumId, topicId, forumName, title, posts, 0);
+    }
+    
+    public TopicView(long forumId, long topicId, String forumName, String title,
+            List<PostView> posts, long nextAfter) {
         
         Params.cannotBeEmpty(forumName);
         Params.cannotBeEmpty(title);
@@ -37,6 +47,7 @@ public class TopicView {
         this.forumName = forumName;
         this.title = title;
         this.posts = posts;
+        this.nextAfter = nextAfter;
     }
 
     public List<PostView> getPosts() {
@@ -70,4 +81,11 @@ public class TopicView {
     public String getTitle() {
         return title;
     }
+
+    /**
+     * @return the cursor for the next page, or 0 if there is none
+     */
+    public long getNextAfter() {
+        return nextAfter;
+    }
 }
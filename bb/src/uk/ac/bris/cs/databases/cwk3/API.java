@@ -22,31 +22,96 @@ import uk.ac.bris.cs.databases.api.*;
  */
 public class API implements APIProvider {
 
-    private final Connection c;
+    private static final int CACHE_SIZE = Integer.getInteger("bb.cache.lookupSize", 10000);
 
-    public API(Connection c) {
-        this.c = c;
+    private final ConnectionPool pool;
+
+    // Topics, forums and people are never renamed or deleted, so once found
+    // they are cached for good. Misses are not cached as the row may be
+    // created later; the create methods add new rows to the cache instead.
+    // Per API, as the ids only mean something in its own database.
+    private final LookupCache<Long, String> topics = new LookupCache<>(CACHE_SIZE);
+    private final LookupCache<Long, String> forums = new LookupCache<>(CACHE_SIZE);
+    private final LookupCache<String, Long> people = new LookupCache<>(CACHE_SIZE);
+
+    // Writes likes behind the request when set, otherwise they are
+    // written and committed one by one
+    private final LikeBatcher likes;
+
+    // Holds like count changes in memory when set, otherwise they are
+    // written to the stored counts along with the like
+    private final LikeCounters counters;
+
+    public API(ConnectionPool pool) {
+        this(pool, null, null);
+    }
+
+    public API(ConnectionPool pool, LikeBatcher likes, LikeCounters counters) {
+        this.pool = pool;
+        this.likes = likes;
+        this.counters = counters;
+    }
+
+    /**
+     * @return the titles of topics looked up, for its hit/miss counters.
+     */
+    public LookupCache<Long, String> getTopicCache() {
+        return topics;
+    }
+
+    /**
+     * @return the titles of forums looked up, for its hit/miss counters.
+     */
+    public LookupCache<Long, String> getForumCache() {
+        return forums;
+    }
+
+    /**
+     * @return the ids of people looked up, for its hit/miss counters.
+     */
+    public LookupCache<String, Long> getPersonCache() {
+        return people;
     }
 
     /* A.1 */
 
     @Override
     public Result<Map<String, String>> getUsers() {
-        final String STMT = "SELECT name, username FROM Person";
+        try (Connection c = pool.getConnection()) {
+            final String STMT = "SELECT name, username FROM Person";
 
-        try (PreparedStatement p = c.prepareStatement(STMT)) {
-            ResultSet r = p.executeQuery();
-            Map<String,String> map = new HashMap<>();
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+                ResultSet r = p.executeQuery();
+                Map<String,String> map = new HashMap<>();
 
-            while (r.next()) {
-                map.put(r.getString("name"), r.getNString("username"));
-            }
+                while (r.next()) {
+                    map.put(r.getString("name"), r.getNString("username"));
+                }
+
+                return Result.success(map);
 
-            return Result.success(map);
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
+    }
 
+    @Override
+    public Result<ResultCursor<PersonView>> streamUsers() {
+        Connection c;
+        try {
+            c = pool.getConnection();
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
+
+        // Ordered by the unique index on username, so rows stream
+        // without a sort
+        final String STMT = "SELECT name, username, stuId FROM Person ORDER BY username";
+
+        return JdbcCursor.open(c, STMT, p -> {}, API::toPersonView);
     }
 
     @Override
@@ -55,30 +120,34 @@ public class API implements APIProvider {
             return Result.failure("Username cannot be empty.");
         }
 
-        final String STMT = "SELECT name, username, stuId FROM Person WHERE username = ?";
+        try (Connection c = pool.getConnection()) {
+            final String STMT = "SELECT name, username, stuId FROM Person WHERE username = ?";
 
-        try (PreparedStatement p = c.prepareStatement(STMT)) {
-            p.setString(1,username);
-            ResultSet r = p.executeQuery();
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+                p.setString(1,username);
+                ResultSet r = p.executeQuery();
 
-            if (!r.next()) {
-                return Result.failure("User not found.");
-            }
+                if (!r.next()) {
+                    return Result.failure("User not found.");
+                }
 
-            // Takes care of null stuId
-            String stuId = r.getString("stuId");
-            if ( stuId == null) {
-                stuId = "";
-            }
+                // Takes care of null stuId
+                String stuId = r.getString("stuId");
+                if ( stuId == null) {
+                    stuId = "";
+                }
 
-            PersonView personView = new PersonView(
-                        r.getString("name"),
-                        r.getString("username"),
-                        stuId
-            );
+                PersonView personView = new PersonView(
+                            r.getString("name"),
+                            r.getString("username"),
+                            stuId
+                );
 
-            return Result.success(personView);
+                return Result.success(personView);
 
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
@@ -98,29 +167,38 @@ public class API implements APIProvider {
             return Result.failure("StudentId cannot be empty.");
         }
 
-        // create user
-        final String STMT_2 = "INSERT INTO Person (name, username, stuId) VALUES (?, ?, ?)";
+        try (Connection c = pool.getConnection()) {
+            // create user
+            final String STMT_2 = "INSERT INTO Person (name, username, stuId) VALUES (?, ?, ?)";
 
-        try (PreparedStatement p = c.prepareStatement(STMT_2)) {
-            p.setString(1, name);
-            p.setString(2, username);
-            p.setString(3, studentId);
+            try (PreparedStatement p = c.prepareStatement(STMT_2, Statement.RETURN_GENERATED_KEYS)) {
+                p.setString(1, name);
+                p.setString(2, username);
+                p.setString(3, studentId);
 
-            p.executeQuery();
-            c.commit();
-            return Result.success();
-        } catch (SQLException e) {
-            // Check for integrity constraint violation(23---)
-            // Duplicate entry means the username is taken
-            if (e.getSQLState().startsWith("23")) {
-                return Result.failure("Username is taken.");
-            }
+                p.executeUpdate();
+                ResultSet generatedKeys = p.getGeneratedKeys();
+                c.commit();
 
-            try {
-                c.rollback();
-            } catch (SQLException f) {
-                return Result.fatal(f.getMessage());
+                if (generatedKeys.next()) {
+                    people.put(username, generatedKeys.getLong(1));
+                }
+                return Result.success();
+            } catch (SQLException e) {
+                // Check for integrity constraint violation(23---)
+                // Duplicate entry means the username is taken
+                if (e.getSQLState().startsWith("23")) {
+                    return Result.failure("Username is taken.");
+                }
+
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    return Result.fatal(f.getMessage());
+                }
+                return Result.fatal(e.getMessage());
             }
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
@@ -129,59 +207,100 @@ public class API implements APIProvider {
 
     @Override
     public Result<List<SimpleForumSummaryView>> getSimpleForums() {
-        final String STMT = "SELECT forum_id, title FROM Forum";
+        try (Connection c = pool.getConnection()) {
+            final String STMT = "SELECT forum_id, title FROM Forum";
 
-        try (PreparedStatement p = c.prepareStatement(STMT)) {
-            ResultSet r = p.executeQuery();
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+                ResultSet r = p.executeQuery();
 
-            List<SimpleForumSummaryView> viewList = new ArrayList<>();
-            while(r.next()) {
-                SimpleForumSummaryView view = new SimpleForumSummaryView(
-                        r.getLong("forum_id"),
-                        r.getString("title")
-                );
+                List<SimpleForumSummaryView> viewList = new ArrayList<>();
+                while(r.next()) {
+                    SimpleForumSummaryView view = new SimpleForumSummaryView(
+                            r.getLong("forum_id"),
+                            r.getString("title")
+                    );
 
-                viewList.add(view);
-            }
+                    viewList.add(view);
+                }
 
-            return Result.success(viewList);
+                return Result.success(viewList);
 
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
 
+    @Override
+    public Result<ResultCursor<SimpleForumSummaryView>> streamSimpleForums() {
+        Connection c;
+        try {
+            c = pool.getConnection();
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
+
+        // Ordered by the unique index on title
+        final String STMT = "SELECT forum_id, title FROM Forum ORDER BY title";
+
+        return JdbcCursor.open(c, STMT, p -> {}, r -> new SimpleForumSummaryView(
+                r.getLong("forum_id"),
+                r.getString("title")
+        ));
+    }
+
     @Override
     public Result createForum(String title) {
         if (title == null || title.isEmpty()) {
             return Result.failure("Forum title cannot be empty.");
         }
 
-        // Check if exists
-        final String STMT_1 = "SELECT forum_id FROM Forum WHERE title = ?";
-        // Create forum
-        final String STMT_2 = "INSERT INTO Forum (title) VALUES (?)";
+        try (Connection c = pool.getConnection()) {
+            // Check if exists
+            final String STMT_1 = "SELECT forum_id FROM Forum WHERE title = ?";
+            // Create forum
+            final String STMT_2 = "INSERT INTO Forum (title) VALUES (?)";
+            // Create its empty activity summary
+            final String STMT_3 = "INSERT INTO ForumSummary (forum_id) VALUES (?)";
+
+            try (PreparedStatement p1 = c.prepareStatement(STMT_1);
+                    PreparedStatement p2 = c.prepareStatement(STMT_2, Statement.RETURN_GENERATED_KEYS);
+                    PreparedStatement p3 = c.prepareStatement(STMT_3)) {
+
+                p1.setString(1, title);
+                ResultSet r = p1.executeQuery();
+                if (r.next()) {
+                    return Result.failure("A forum with the same title already exists.");
+                }
 
-        try (PreparedStatement p1 = c.prepareStatement(STMT_1);
-                PreparedStatement p2 = c.prepareStatement(STMT_2)) {
+                p2.setString(1, title);
+                p2.executeUpdate();
 
-            p1.setString(1, title);
-            ResultSet r = p1.executeQuery();
-            if (r.next()) {
-                return Result.failure("A forum with the same title already exists.");
-            }
+                // Get forum id
+                ResultSet generatedKeys = p2.getGeneratedKeys();
+                if (!generatedKeys.next()) {
+                    return Result.fatal("Forum not created.");
+                }
+                Long forumId = generatedKeys.getLong(1);
 
-            p2.setString(1, title);
-            p2.executeQuery();
-            c.commit();
+                p3.setLong(1, forumId);
+                p3.executeUpdate();
+                c.commit();
 
-            return Result.success();
-        } catch (SQLException e) {
-            try {
-                c.rollback();
-            } catch (SQLException f) {
-                return Result.fatal(f.getMessage());
+                forums.put(forumId, title);
+
+                return Result.success();
+            } catch (SQLException e) {
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    return Result.fatal(f.getMessage());
+                }
+                return Result.fatal(e.getMessage());
             }
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
@@ -190,135 +309,195 @@ public class API implements APIProvider {
 
     @Override
     public Result<List<ForumSummaryView>> getForums() {
-        // Get all forums
-        final String STMT_1 = "SELECT forum_id, title FROM Forum";
-
-        // Get last topic in which a post was made for a forum
-        final String STMT_2 =
-                "SELECT Topic.topic_id, Topic.title, MAX(Post.posted_at) AS lastpost FROM Topic " +
-                        "JOIN Post ON Topic.topic_id = Post.topic_id " +
-                        "WHERE Topic.forum_id = ? " +
-                        "GROUP BY Topic.topic_id, Topic.title " +
-                        "ORDER BY lastpost DESC " +
-                        "LIMIT 1";
-
-        try (PreparedStatement p = c.prepareStatement(STMT_1);
-        PreparedStatement p2 = c.prepareStatement(STMT_2)) {
-
-            ResultSet r = p.executeQuery();
-            List<ForumSummaryView> forumSummaryViews = new ArrayList<>();
-
-            // For each forum get the last topic in which a post was made
-            while(r.next()) {
-                Long forumId = r.getLong("forum_id");
-                String forumTitle = r.getString("title");
-
-                p2.setLong(1, forumId);
-                ResultSet r2 = p2.executeQuery();
-
-                SimpleTopicSummaryView topicSummaryView = null;
-                if (r2.next()) {
-                    topicSummaryView = new SimpleTopicSummaryView(
-                            r2.getLong("Topic.topic_id"),
+        try (Connection c = pool.getConnection()) {
+            // Get all forums together with the last topic in which a post was made
+            final String STMT =
+                    "SELECT Forum.forum_id, Forum.title, Topic.topic_id, Topic.title FROM Forum " +
+                            "LEFT JOIN ForumSummary ON ForumSummary.forum_id = Forum.forum_id " +
+                            "LEFT JOIN Topic ON Topic.topic_id = ForumSummary.last_topic_id " +
+                            "ORDER BY Forum.title ASC";
+
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+
+                ResultSet r = p.executeQuery();
+                List<ForumSummaryView> forumSummaryViews = new ArrayList<>();
+
+                while(r.next()) {
+                    Long forumId = r.getLong("Forum.forum_id");
+
+                    SimpleTopicSummaryView topicSummaryView = null;
+                    long topicId = r.getLong("Topic.topic_id");
+                    if (!r.wasNull()) {
+                        topicSummaryView = new SimpleTopicSummaryView(
+                                topicId,
+                                forumId,
+                                r.getString("Topic.title")
+                        );
+                    }
+
+                    ForumSummaryView forumView = new ForumSummaryView(
                             forumId,
-                            r2.getString("Topic.title")
+                            r.getString("Forum.title"),
+                            topicSummaryView
                     );
+
+                    forumSummaryViews.add(forumView);
                 }
 
+                return Result.success(forumSummaryViews);
 
-                ForumSummaryView forumView = new ForumSummaryView(
-                        forumId,
-                        forumTitle,
-                        topicSummaryView
-                );
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
+    }
 
-                forumSummaryViews.add(forumView);
+    @Override
+    public Result<ForumView> getForum(long id) {
+        try (Connection c = pool.getConnection()) {
+            // Check if forum exists
+            Result forumExists =   HelperStatements.forumExists(id, c, forums);
+            if (!forumExists.isSuccess()) {
+                return forumExists;
             }
+            String forumName = forumExists.getValue().toString();
+
+            // Get topics
+            final String STMT = "SELECT topic_id, title FROM Topic " +
+                    "WHERE forum_id = ? " +
+                    "ORDER BY title ASC";
+
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+                p.setLong(1, id);
+                ResultSet r = p.executeQuery();
+
+                List<SimpleTopicSummaryView> topicSummaryViews = new ArrayList<>();
+                while(r.next()) {
+                    SimpleTopicSummaryView topicSummaryView = new SimpleTopicSummaryView(
+                            r.getLong("topic_id"),
+                            id,
+                            r.getString("title")
+                    );
+
+                    topicSummaryViews.add(topicSummaryView);
+                }
 
-            return Result.success(forumSummaryViews);
+                ForumView forumView = new ForumView(id, forumName,topicSummaryViews);
+                return Result.success(forumView);
 
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
 
     @Override
-    public Result<ForumView> getForum(long id) {
+    public Result<ForumStreamView> streamForum(long id) {
+        Connection c;
+        try {
+            c = pool.getConnection();
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
+
         // Check if forum exists
-        Result forumExists =   HelperStatements.forumExists(id, c);
+        Result forumExists =   HelperStatements.forumExists(id, c, forums);
         if (!forumExists.isSuccess()) {
+            JdbcCursor.closeQuietly(c);
             return forumExists;
         }
         String forumName = forumExists.getValue().toString();
 
-        // Get topics
+        // Get topics, in the order of idx_topic_forum_title
         final String STMT = "SELECT topic_id, title FROM Topic " +
                 "WHERE forum_id = ? " +
                 "ORDER BY title ASC";
 
-        try (PreparedStatement p = c.prepareStatement(STMT)) {
-            p.setLong(1, id);
-            ResultSet r = p.executeQuery();
-
-            List<SimpleTopicSummaryView> topicSummaryViews = new ArrayList<>();
-            while(r.next()) {
-                SimpleTopicSummaryView topicSummaryView = new SimpleTopicSummaryView(
+        // The cursor takes the connection from here on
+        Result<ResultCursor<SimpleTopicSummaryView>> topics = JdbcCursor.open(c, STMT,
+                p -> p.setLong(1, id),
+                r -> new SimpleTopicSummaryView(
                         r.getLong("topic_id"),
                         id,
                         r.getString("title")
-                );
-
-                topicSummaryViews.add(topicSummaryView);
-            }
-
-            ForumView forumView = new ForumView(id, forumName,topicSummaryViews);
-            return Result.success(forumView);
-
-        } catch (SQLException e) {
-            return Result.fatal(e.getMessage());
+                ));
+        if (!topics.isSuccess()) {
+            return Result.fatal(topics.getMessage());
         }
+
+        return Result.success(new ForumStreamView(id, forumName, topics.getValue()));
     }
 
     @Override
     public Result<SimpleTopicView> getSimpleTopic(long topicId) {
-        // Check if topic exists
-        Result topicExists =   HelperStatements.topicExists(topicId, c);
-        if (!topicExists.isSuccess()) {
-            return topicExists;
-        }
-        String topicTitle = topicExists.getValue().toString();
-
-        // Get the posts of a topic in the order they were created
-        final String STMT = "SELECT Post.text, Post.posted_at, Person.name FROM Post " +
-                "JOIN Person ON Person.id = Post.person_id " +
-                "WHERE Post.topic_id = ? " +
-                "ORDER BY Post.posted_at ASC";
-
-        try(PreparedStatement p = c.prepareStatement(STMT)) {
-            p.setLong(1, topicId);
-            ResultSet r = p.executeQuery();
-
-            List<SimplePostView> simplePostViews = new ArrayList<>();
+        return getSimpleTopic(topicId, 0, Integer.MAX_VALUE);
+    }
 
-            int postNumber = 0;
-            while (r.next()){
-                postNumber++;
+    @Override
+    public Result<SimpleTopicView> getSimpleTopic(long topicId, long after, int pageSize) {
+        if (after < 0) {
+            return Result.failure("Invalid page cursor.");
+        }
+        if (pageSize < 1) {
+            return Result.failure("Page size must be positive.");
+        }
 
-                SimplePostView simplePostView = new SimplePostView(
-                        postNumber,
-                        r.getString("Person.name"),
-                        r.getString("Post.text"),
-                        r.getTimestamp("Post.posted_at")
-                                .toLocalDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"))
-                );
-                simplePostViews.add(simplePostView);
-            }
-            // Avoiding exception in case list is empty
-            if (simplePostViews.isEmpty()) {
-                return Result.failure("No posts found.");
+        try (Connection c = pool.getConnection()) {
+            // Check if topic exists
+            Result topicExists =   HelperStatements.topicExists(topicId, c, topics);
+            if (!topicExists.isSuccess()) {
+                return topicExists;
             }
-            return Result.success(new SimpleTopicView(topicId, topicTitle, simplePostViews));
+            String topicTitle = topicExists.getValue().toString();
+
+            // Get the posts of a topic in the order they were created,
+            // following the cursor post number.
+            // One extra post is fetched to tell whether another page follows.
+            final String STMT = "SELECT Post.post_number, Post.text, Post.posted_at, Person.name FROM Post " +
+                    "JOIN Person ON Person.id = Post.person_id " +
+                    "WHERE Post.topic_id = ? AND Post.post_number > ? " +
+                    "ORDER BY Post.post_number ASC " +
+                    "LIMIT ?";
+
+            try(PreparedStatement p = c.prepareStatement(STMT)) {
+                p.setLong(1, topicId);
+                p.setLong(2, after);
+                p.setLong(3, pageSize + 1L);
+                ResultSet r = p.executeQuery();
+
+                List<SimplePostView> simplePostViews = new ArrayList<>();
+
+                int postNumber = 0;
+                long nextAfter = 0;
+                while (r.next()){
+                    if (simplePostViews.size() == pageSize) {
+                        nextAfter = postNumber;
+                        break;
+                    }
+                    postNumber = r.getInt("Post.post_number");
+
+                    SimplePostView simplePostView = new SimplePostView(
+                            postNumber,
+                            r.getString("Person.name"),
+                            r.getString("Post.text"),
+                            r.getTimestamp("Post.posted_at")
+                                    .toLocalDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"))
+                    );
+                    simplePostViews.add(simplePostView);
+                }
+                // Avoiding exception in case list is empty
+                if (simplePostViews.isEmpty()) {
+                    return Result.failure("No posts found.");
+                }
+                return Result.success(new SimpleTopicView(topicId, topicTitle, simplePostViews, nextAfter));
 
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
@@ -326,47 +505,39 @@ public class API implements APIProvider {
 
     @Override
     public Result<PostView> getLatestPost(long topicId) {
-        // Check if topic exists
-        Result topicExists =   HelperStatements.topicExists(topicId, c);
-        if (!topicExists.isSuccess()) {
-            return topicExists;
-        }
+        try (Connection c = pool.getConnection()) {
+            // Get latest post through the topic summary.
+            // No row means the topic does not exist.
+            final String STMT =
+                    "SELECT Post.post_id, Post.post_number, Post.posted_at, Post.text, Post.total_likes, " +
+                            "TopicSummary.forum_id, " +
+                            "Person.name, Person.username FROM TopicSummary " +
+                            "JOIN Post ON Post.post_id = TopicSummary.last_post_id " +
+                            "JOIN Person ON Post.person_id = Person.id " +
+                            "WHERE TopicSummary.topic_id = ?";
+
+            try(PreparedStatement p = c.prepareStatement(STMT)) {
+                p.setLong(1, topicId);
+                ResultSet r = p.executeQuery();
+
+                if(r.next()) {
+                    PostView postView = new PostView(r.getLong("TopicSummary.forum_id"),
+                            topicId,
+                            r.getInt("Post.post_number"),
+                            r.getString("Person.name"),
+                            r.getString("Person.username"),
+                            r.getString("Post.text"),
+                            r.getTimestamp("Post.posted_at")
+                                    .toLocalDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
+                            postLikes(r.getLong("Post.post_id"), r.getInt("Post.total_likes"))
+                            );
+                    return Result.success(postView);
+                }
+                return Result.failure("Topic does not exist.");
 
-        // Get latest post
-        final String STMT_1 =
-                "SELECT Post.post_id, Post.posted_at, Post.text, Post.total_likes, " +
-                        "Topic.forum_id, Person.name, Person.username FROM Post " +
-                        "JOIN Topic ON Post.topic_id = Topic.topic_id " +
-                        "JOIN Person ON Post.person_id = Person.id " +
-                        "WHERE Post.topic_id = ? " +
-                        "ORDER BY Post.posted_at DESC " +
-                        "LIMIT 1;";
-
-        // Get the number of posts in the topic for postNumber
-        final String STMT_2 = "SELECT COUNT(*) AS post_number FROM Post WHERE topic_id = ?";
-
-        try(PreparedStatement p = c.prepareStatement(STMT_1);
-        PreparedStatement p2 = c.prepareStatement(STMT_2)) {
-            p.setLong(1, topicId);
-            p2.setLong(1, topicId);
-            ResultSet r = p.executeQuery();
-            ResultSet r2 = p.executeQuery();
-
-            if(r.next() && r2.next()) {
-                PostView postView = new PostView(r.getLong("Post.forum_id"),
-                        topicId,
-                        r2.getInt("post_number"),
-                        r.getString("Person.name"),
-                        r.getString("Person.username"),
-                        r.getString("Post.test"),
-                        r.getTimestamp("Post.posted_at")
-                                .toLocalDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
-                        r.getInt("Post.total_likes")
-                        );
-                return Result.success(postView);
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
             }
-            return Result.failure("There are no posts in this tipic.");
-
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
@@ -381,40 +552,87 @@ public class API implements APIProvider {
             return Result.failure("Text cannot be empty.");
         }
 
-        // Retrieve person id if exists
-        Result<Long> personExists = HelperStatements.getPersonId(username, c);
-        if (!personExists.isSuccess()) {
-            return personExists;
-        }
-        Long personId = personExists.getValue();
+        try (Connection c = pool.getConnection()) {
+            // Retrieve person id if exists
+            Result<Long> personExists = HelperStatements.getPersonId(username, c, people);
+            if (!personExists.isSuccess()) {
+                return personExists;
+            }
+            Long personId = personExists.getValue();
+
+            // Lock the topic summary, so concurrent posts to the topic
+            // take the post numbers one after the other.
+            // No summary means the topic does not exist.
+            final String STMT_0 = "SELECT post_count FROM TopicSummary WHERE topic_id = ? FOR UPDATE";
+
+            // Create post with the next number in its topic
+            final String STMT_1 = "INSERT INTO Post(topic_id, person_id, posted_at, text, post_number) " +
+                    "VALUES(?, ?, ?, ?, ?)";
+
+            // Record it as the last post of its topic and forum
+            final String STMT_2 = "UPDATE TopicSummary SET post_count = post_count + 1, " +
+                    "last_post_id = ?, last_post_at = ? WHERE topic_id = ?";
+            final String STMT_3 = "UPDATE ForumSummary SET post_count = post_count + 1, " +
+                    "last_topic_id = ?, last_post_id = ?, last_post_at = ? " +
+                    "WHERE forum_id = (SELECT forum_id FROM TopicSummary WHERE topic_id = ?)";
+
+            try(PreparedStatement p0 = c.prepareStatement(STMT_0);
+                PreparedStatement p = c.prepareStatement(STMT_1, Statement.RETURN_GENERATED_KEYS);
+                PreparedStatement p2 = c.prepareStatement(STMT_2);
+                PreparedStatement p3 = c.prepareStatement(STMT_3)) {
+                p0.setLong(1, topicId);
+                ResultSet r = p0.executeQuery();
+                if (!r.next()) {
+                    return Result.failure("Topic does not exist.");
+                }
+                int postNumber = r.getInt("post_count") + 1;
 
-        // Create post
-        final String STMT = "INSERT INTO Post(topic_id, person_id, posted_at, text) VALUES(?, ?, ?, ?)";
+                Timestamp postedAt = Timestamp.from(Instant.now());
 
-        try(PreparedStatement p = c.prepareStatement(STMT)) {
-            p.setLong(1, topicId);
-            p.setLong(2, personId);
-            p.setTimestamp(3, Timestamp.from(Instant.now()));
-            p.setString(4, text);
-            p.executeQuery();
-            c.commit();
+                p.setLong(1, topicId);
+                p.setLong(2, personId);
+                p.setTimestamp(3, postedAt);
+                p.setString(4, text);
+                p.setInt(5, postNumber);
+                p.executeUpdate();
 
-            return Result.success();
+                // Get post id
+                ResultSet generatedKeys = p.getGeneratedKeys();
+                if (!generatedKeys.next()) {
+                    return Result.fatal("Post not created.");
+                }
+                long postId = generatedKeys.getLong(1);
 
-        } catch (SQLException e) {
-            if (e.getMessage().contains("CONSTRAINT `fk_post_nonexistent_topicid`")) {
-                return Result.failure("Topic does not exist.");
-            }
+                p2.setLong(1, postId);
+                p2.setTimestamp(2, postedAt);
+                p2.setLong(3, topicId);
+                p2.executeUpdate();
 
-            try {
-                c.rollback();
-            } catch (SQLException f) {
-                return Result.fatal(f.getMessage());
-            }
+                p3.setLong(1, topicId);
+                p3.setLong(2, postId);
+                p3.setTimestamp(3, postedAt);
+                p3.setLong(4, topicId);
+                p3.executeUpdate();
+                c.commit();
+
+                return Result.success();
 
+            } catch (SQLException e) {
+                if (e.getMessage().contains("CONSTRAINT `fk_post_nonexistent_topicid`")) {
+                    return Result.failure("Topic does not exist.");
+                }
+
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    return Result.fatal(f.getMessage());
+                }
+
+                return Result.fatal(e.getMessage());
+            }
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
-
     }
 
     @Override
@@ -429,74 +647,109 @@ public class API implements APIProvider {
             return Result.failure("Text cannot be empty.");
         }
 
-        // Check if person exists and retrieve person id
-        Result<Long> personExists = HelperStatements.getPersonId(username, c);
-        if (!personExists.isSuccess()) {
-            return personExists;
-        }
-        Long personId = personExists.getValue();
+        try (Connection c = pool.getConnection()) {
+            // Check if person exists and retrieve person id
+            Result<Long> personExists = HelperStatements.getPersonId(username, c, people);
+            if (!personExists.isSuccess()) {
+                return personExists;
+            }
+            Long personId = personExists.getValue();
+
+            // Create topic
+            String STMT_1 = "INSERT INTO Topic(forum_id, person_id, title) VALUES(?, ?, ?)";
+
+            // Create post, the first of its topic
+            final String STMT_2 = "INSERT INTO Post(topic_id, person_id, posted_at, text, post_number) " +
+                    "VALUES(?, ?, ?, ?, 1)";
+
+            // Create the topic summary and record the topic as the forum's latest
+            final String STMT_3 = "INSERT INTO TopicSummary(topic_id, forum_id, post_count, last_post_id, last_post_at) " +
+                    "VALUES(?, ?, 1, ?, ?)";
+            final String STMT_4 = "UPDATE ForumSummary SET post_count = post_count + 1, " +
+                    "last_topic_id = ?, last_post_id = ?, last_post_at = ? WHERE forum_id = ?";
+
+            try(PreparedStatement p = c.prepareStatement(STMT_1, Statement.RETURN_GENERATED_KEYS);
+            PreparedStatement p2 = c.prepareStatement(STMT_2, Statement.RETURN_GENERATED_KEYS);
+            PreparedStatement p3 = c.prepareStatement(STMT_3);
+            PreparedStatement p4 = c.prepareStatement(STMT_4)) {
+                p.setLong(1, forumId);
+                p.setLong(2, personId);
+                p.setString(3, title);
+                p.executeQuery();
+
+                // Get topic id
+                ResultSet generatedKeys = p.getGeneratedKeys();
+                if (!generatedKeys.next()) {
+                    return Result.fatal("Topic not created.");
+                }
 
-        // Create topic
-        String STMT_1 = "INSERT INTO Topic(forum_id, person_id, title) VALUES(?, ?, ?)";
+                Long topicId = generatedKeys.getLong(1);
+                Timestamp postedAt = Timestamp.from(Instant.now());
+                p2.setLong(1, topicId);
+                p2.setLong(2, personId);
+                p2.setTimestamp(3, postedAt);
+                p2.setString(4, text);
+                p2.executeUpdate();
+
+                // Get post id
+                generatedKeys = p2.getGeneratedKeys();
+                if (!generatedKeys.next()) {
+                    return Result.fatal("Post not created.");
+                }
+                Long postId = generatedKeys.getLong(1);
 
-        // Create post
-        final String STMT_2 = "INSERT INTO Post(topic_id, person_id, posted_at, text) VALUES(?, ?, ?, ?)";
+                p3.setLong(1, topicId);
+                p3.setLong(2, forumId);
+                p3.setLong(3, postId);
+                p3.setTimestamp(4, postedAt);
+                p3.executeUpdate();
 
-        try(PreparedStatement p = c.prepareStatement(STMT_1, Statement.RETURN_GENERATED_KEYS);
-        PreparedStatement p2 = c.prepareStatement(STMT_2)) {
-            p.setLong(1, forumId);
-            p.setLong(2, personId);
-            p.setString(3, title);
-            p.executeQuery();
+                p4.setLong(1, topicId);
+                p4.setLong(2, postId);
+                p4.setTimestamp(3, postedAt);
+                p4.setLong(4, forumId);
+                p4.executeUpdate();
+                c.commit();
 
-            // Get topic id
-            ResultSet generatedKeys = p.getGeneratedKeys();
-            if (!generatedKeys.next()) {
-                return Result.fatal("Post not created.");
-            }
+                topics.put(topicId, title);
 
-            Long postId = generatedKeys.getLong("post_id");
-            p2.setLong(1, postId);
-            p2.setLong(2, personId);
-            p2.setTimestamp(3, Timestamp.from(Instant.now()));
-            p2.setString(4, text);
-            p2.executeQuery();
-            c.commit();
+                return Result.success();
 
-            return Result.success();
+            } catch (SQLException e) {
+                if (e.getMessage().contains("CONSTRAINT `fk_topic_nonexistent_forumid`")) {
+                    return Result.failure("Forum does not exist.");
+                }
 
-        } catch (SQLException e) {
-            if (e.getMessage().contains("CONSTRAINT `fk_topic_nonexistent_forumid`")) {
-                return Result.failure("Forum does not exist.");
-            }
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    return Result.fatal(f.getMessage());
+                }
 
-            try {
-                c.rollback();
-            } catch (SQLException f) {
-                return Result.fatal(f.getMessage());
+                return Result.fatal(e.getMessage());
             }
-
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
 
     @Override
     public Result<Integer> countPostsInTopic(long topicId) {
-        // check if topic exists
-        Result topicExists =   HelperStatements.topicExists(topicId, c);
-        if (!topicExists.isSuccess()) {
-            return topicExists;
-        }
-
-        // Get post count
-        final String STMT_1 = "SELECT COUNT(*) AS totalPosts FROM Post WHERE topic_id = ?";
-        try(PreparedStatement p = c.prepareStatement(STMT_1)) {
-            p.setLong(1,topicId);
-            ResultSet r = p.executeQuery();
-
-            r.next();
-            return Result.success(r.getInt("totalPosts"));
+        try (Connection c = pool.getConnection()) {
+            // Get post count, no summary means the topic does not exist
+            final String STMT_1 = "SELECT post_count FROM TopicSummary WHERE topic_id = ?";
+            try(PreparedStatement p = c.prepareStatement(STMT_1)) {
+                p.setLong(1,topicId);
+                ResultSet r = p.executeQuery();
+
+                if (!r.next()) {
+                    return Result.failure("Topic does not exist.");
+                }
+                return Result.success(r.getInt("post_count"));
 
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
@@ -510,240 +763,591 @@ public class API implements APIProvider {
             return Result.failure("Username cannot be empty.");
         }
 
-        // Retrieve person id if exists
-        Result<Long> personExists = HelperStatements.getPersonId(username, c);
-        if (!personExists.isSuccess()) {
-            return personExists;
-        }
-        Long personId = personExists.getValue();
+        try (Connection c = pool.getConnection()) {
+            // Retrieve person id if exists
+            Result<Long> personExists = HelperStatements.getPersonId(username, c, people);
+            if (!personExists.isSuccess()) {
+                return personExists;
+            }
+            Long personId = personExists.getValue();
 
-        // Perform like/unlike action
-        String STMT;
-        if (like) {
-            STMT = "INSERT INTO TopicLikes(topic_id, person_id) VALUES (?,?)";
-        } else {
-            STMT = "DELETE FROM TopicLikes WHERE topic_id = ? AND person_id = ?";
-        }
+            // Queue the like once the topic is known to exist
+            if (likes != null) {
+                Result topicExists = HelperStatements.topicExists(topicId, c, topics);
+                if (!topicExists.isSuccess()) {
+                    return topicExists;
+                }
+                return likes.likeTopic(personId, topicId, like);
+            }
 
-        try(PreparedStatement p = c.prepareStatement(STMT)) {
-            p.setLong(1, topicId);
-            p.setLong(2, personId);
-            p.executeQuery();
-            c.commit();
-        } catch (SQLException e) {
-            // Check for integrity constraint violation(23---)
-            // Duplicate entry means the like already exists
-            if (e.getSQLState().startsWith("23")) {
-                return Result.success();
+            // Perform like/unlike action
+            String STMT_1;
+            int likeDelta;
+            if (like) {
+                STMT_1 = "INSERT INTO TopicLikes(topic_id, person_id) VALUES (?,?)";
+                likeDelta = 1;
+            } else {
+                STMT_1 = "DELETE FROM TopicLikes WHERE topic_id = ? AND person_id = ?";
+                likeDelta = -1;
             }
 
-            try {
-                c.rollback();
-            } catch (SQLException f) {
-                return Result.fatal(f.getMessage());
+            // Keep the topic and forum like counts in step
+            final String STMT_2 = "UPDATE TopicSummary SET like_count = like_count + ? WHERE topic_id = ?";
+            final String STMT_3 = "UPDATE ForumSummary SET like_count = like_count + ? " +
+                    "WHERE forum_id = (SELECT forum_id FROM TopicSummary WHERE topic_id = ?)";
+
+            try(PreparedStatement p = c.prepareStatement(STMT_1);
+                PreparedStatement p2 = c.prepareStatement(STMT_2);
+                PreparedStatement p3 = c.prepareStatement(STMT_3)) {
+                p.setLong(1, topicId);
+                p.setLong(2, personId);
+
+                // If the insert/delete affected any rows, update the like counts
+                int rowsAffected = p.executeUpdate();
+                if (rowsAffected == 1 && counters == null) {
+                    p2.setInt(1, likeDelta);
+                    p2.setLong(2, topicId);
+                    p2.executeUpdate();
+
+                    p3.setInt(1, likeDelta);
+                    p3.setLong(2, topicId);
+                    p3.executeUpdate();
+                }
+                c.commit();
+
+                if (rowsAffected == 1 && counters != null) {
+                    counters.addTopicLikes(topicId, likeDelta);
+                }
+            } catch (SQLException e) {
+                // Check for integrity constraint violation(23---)
+                // Duplicate entry means the like already exists
+                if (e.getSQLState().startsWith("23")) {
+                    return Result.success();
+                }
+
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    return Result.fatal(f.getMessage());
+                }
+
+                return Result.fatal(e.getMessage());
             }
 
+            return Result.success();
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
-
-        return Result.success();
     }
 
     @Override
     public Result likePost(String username, long topicId, int post, boolean like) {
-        // Get post id if exists
-        final String STMT_1 = "SELECT post_id FROM Post WHERE topic_id = ? " +
-                "ORDER BY posted_at ASC " +
-                "LIMIT 1 OFFSET ?";
+        try (Connection c = pool.getConnection()) {
+            // Get post id if exists
+            final String STMT_1 = "SELECT post_id FROM Post WHERE topic_id = ? AND post_number = ?";
+
+            Long postId;
+            try(PreparedStatement p = c.prepareStatement(STMT_1)) {
+                p.setLong(1, topicId);
+                p.setInt(2, post);
+                ResultSet r = p.executeQuery();
+
+                if (!r.next()) {
+                    return Result.failure("Post does not exist.");
+                }
 
-        int postOffset = post -1;
-        Long postId;
-        try(PreparedStatement p = c.prepareStatement(STMT_1)) {
-            p.setLong(1, topicId);
-            p.setInt(2, postOffset);
-            ResultSet r = p.executeQuery();
+                postId = r.getLong("post_id");
 
-            if (!r.next()) {
-                return Result.failure("Post does not exist.");
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
             }
 
-            postId = r.getLong("post_id");
+            // Retrieve person id
+            Result<Long> personExists = HelperStatements.getPersonId(username, c, people);
+            if (!personExists.isSuccess()) {
+                return personExists;
+            }
+            Long personId = personExists.getValue();
 
-        } catch (SQLException e) {
-            return Result.fatal(e.getMessage());
-        }
+            if (likes != null) {
+                return likes.likePost(personId, topicId, postId, like);
+            }
 
-        // Retrieve person id
-        Result<Long> personExists = HelperStatements.getPersonId(username, c);
-        if (!personExists.isSuccess()) {
-            return personExists;
-        }
-        Long personId = personExists.getValue();
+            // Perform like/unlike action
+            String STMT_2A;
+            String STMT_2B;
+            if (like) {
+                STMT_2A = "INSERT INTO PostLikes(post_id, person_id) VALUES (?,?)";
+                STMT_2B = "UPDATE Post SET total_likes = total_likes + 1 WHERE post_id = ?";
+            } else {
+                STMT_2A = "DELETE FROM PostLikes WHERE post_id = ? AND person_id = ?";
+                STMT_2B = "UPDATE Post SET total_likes = total_likes - 1 WHERE post_id = ?";
+            }
 
-        // Perform like/unlike action
-        String STMT_2A;
-        String STMT_2B;
-        if (like) {
-            STMT_2A = "INSERT INTO PostLikes(post_id, person_id) VALUES (?,?)";
-            STMT_2B = "UPDATE Post SET total_likes = total_likes + 1 WHERE post_id = ?";
-        } else {
-            STMT_2A = "DELETE FROM PostLikes WHERE post_id = ? AND person_id = ?";
-            STMT_2B = "UPDATE Post SET total_likes = total_likes - 1 WHERE post_id = ?";
-        }
+            try(PreparedStatement p = c.prepareStatement(STMT_2A);
+                PreparedStatement p2 = c.prepareStatement(STMT_2B)) {
+                p.setLong(1, postId);
+                p.setLong(2, personId);
 
-        try(PreparedStatement p = c.prepareStatement(STMT_2A);
-            PreparedStatement p2 = c.prepareStatement(STMT_2B)) {
-            p.setLong(1, postId);
-            p.setLong(2, personId);
+                // If the insert/delete affected any rows, update the post total likes
+                int rowsAffected = p.executeUpdate();
+                if (rowsAffected == 1 && counters == null) {
+                    p2.setLong(1, postId);
+                    p2.executeQuery();
+                }
+                c.commit();
 
-            // If the insert/delete affected any rows, update the post total likes
-            int rowsAffected = p.executeUpdate();
-            if (rowsAffected == 1) {
-                p2.setLong(1, postId);
-                p2.executeQuery();
-            }
-            c.commit();
+                if (rowsAffected == 1 && counters != null) {
+                    counters.addPostLikes(postId, like ? 1 : -1);
+                }
 
-            return Result.success();
-        } catch (SQLException e) {
-            // Check for integrity constraint violation(23---)
-            // Duplicate entry means the like already exists
-            if (e.getSQLState().startsWith("23")) {
                 return Result.success();
+            } catch (SQLException e) {
+                // Check for integrity constraint violation(23---)
+                // Duplicate entry means the like already exists
+                if (e.getSQLState().startsWith("23")) {
+                    return Result.success();
+                }
+
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    return Result.fatal(f.getMessage());
+                }
+
+                return Result.fatal(e.getMessage());
             }
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
+    }
 
-            try {
-                c.rollback();
-            } catch (SQLException f) {
-                return Result.fatal(f.getMessage());
+    @Override
+    public Result<List<PersonView>> getLikers(long topicId) {
+        try (Connection c = pool.getConnection()) {
+            // Check if topic exists
+            Result topicExists =   HelperStatements.topicExists(topicId, c, topics);
+            if (!topicExists.isSuccess()) {
+                return topicExists;
             }
 
+            final String STMT = "SELECT Person.name, Person.username, Person.stuId FROM TopicLikes " +
+                    "JOIN Person ON Person.id = TopicLikes.person_id " +
+                    "WHERE TopicLikes.topic_id = ?";
+
+            try(PreparedStatement p = c.prepareStatement(STMT)) {
+                p.setLong(1, topicId);
+                ResultSet r = p.executeQuery();
+
+                List<PersonView> personViews = new ArrayList<>();
+                while(r.next()) {
+                    PersonView personView = new PersonView(
+                            r.getString("name"),
+                            r.getString("username"),
+                            r.getString("stuId")
+                    );
+
+                    personViews.add(personView);
+                }
+
+                return Result.success(personViews);
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
 
     @Override
-    public Result<List<PersonView>> getLikers(long topicId) {
+    public Result<ResultCursor<PersonView>> streamLikers(long topicId) {
+        Connection c;
+        try {
+            c = pool.getConnection();
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
+
         // Check if topic exists
-        Result topicExists =   HelperStatements.topicExists(topicId, c);
+        Result topicExists =   HelperStatements.topicExists(topicId, c, topics);
         if (!topicExists.isSuccess()) {
+            JdbcCursor.closeQuietly(c);
             return topicExists;
         }
 
         final String STMT = "SELECT Person.name, Person.username, Person.stuId FROM TopicLikes " +
                 "JOIN Person ON Person.id = TopicLikes.person_id " +
-                "WHERE TopicLikes.topic_id = ?";
+                "WHERE TopicLikes.topic_id = ? " +
+                "ORDER BY Person.name";
 
-        try(PreparedStatement p = c.prepareStatement(STMT)) {
-            p.setLong(1, topicId);
-            ResultSet r = p.executeQuery();
+        // The cursor takes the connection from here on
+        return JdbcCursor.open(c, STMT, p -> p.setLong(1, topicId), API::toPersonView);
+    }
 
-            List<PersonView> personViews = new ArrayList<>();
-            while(r.next()) {
-                PersonView personView = new PersonView(
-                        r.getString("name"),
-                        r.getString("username"),
-                        r.getString("stuId")
-                );
+    @Override
+    public Result<TopicView> getTopic(long topicId) {
+        return getTopic(topicId, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Result<TopicView> getTopic(long topicId, long after, int pageSize) {
+        if (after < 0) {
+            return Result.failure("Invalid page cursor.");
+        }
+        if (pageSize < 1) {
+            return Result.failure("Page size must be positive.");
+        }
+
+        try (Connection c = pool.getConnection()) {
+            // Check if topic exists and
+            // get topic title, forum id, and forum title
+            final String STMT_1 = "SELECT Topic.title, Topic.forum_id, Forum.title FROM Topic " +
+                    "JOIN Forum ON Topic.forum_id = Forum.forum_id " +
+                    "WHERE Topic.topic_id = ?";
+
+
+            Long forumId;
+            String forumName;
+            String topicTitle;
 
-                personViews.add(personView);
+            try (PreparedStatement p = c.prepareStatement(STMT_1)) {
+                p.setLong(1,topicId);
+                ResultSet r = p.executeQuery();
+
+                if (!r.next()) {
+                    return Result.failure("Topic does not exist.");
+                }
+
+                topicTitle = r.getString("Topic.title");
+                forumId = r.getLong("Topic.forum_id");
+                forumName = r.getString("Forum.title");
+
+            } catch(SQLException e) {
+                return Result.fatal(e.getMessage());
             }
 
-            return Result.success(personViews);
+            // Construct post views following the cursor post number.
+            // One extra post tells whether another page follows.
+            final String STMT_2 =
+                    "SELECT Post.post_id, Post.post_number, Post.text, Post.posted_at, Post.total_likes, " +
+                            "Person.name, Person.username FROM Post " +
+                            "JOIN Person ON Post.person_id = Person.id " +
+                            "WHERE Post.topic_id = ? AND Post.post_number > ? " +
+                            "ORDER BY Post.post_number ASC " +
+                            "LIMIT ?";
+
+            List<PostView> postViews = new ArrayList<>();
+            long nextAfter = 0;
+
+            try(PreparedStatement p = c.prepareStatement(STMT_2)) {
+                p.setLong(1, topicId);
+                p.setLong(2, after);
+                p.setLong(3, pageSize + 1L);
+                ResultSet r = p.executeQuery();
+
+                int postNumber = 0;
+                while(r.next()) {
+                    if (postViews.size() == pageSize) {
+                        nextAfter = postNumber;
+                        break;
+                    }
+                    postNumber = r.getInt("Post.post_number");
+
+                    PostView postView = new PostView(
+                            forumId,
+                            topicId,
+                            postNumber,
+                            r.getString("Person.name"),
+                            r.getString("Person.username"),
+                            r.getString("text"),
+                            r.getTimestamp("Post.posted_at")
+                                    .toLocalDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
+                            postLikes(r.getLong("Post.post_id"), r.getInt("Post.total_likes"))
+                    );
+
+                    postViews.add(postView);
+                }
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
+
+            // Avoid exception in case of empty list
+            if (postViews.isEmpty()) {
+                return Result.failure("No posts found.");
+            }
+
+            // Construct topic view
+            TopicView topicView = new TopicView(forumId, topicId, forumName, topicTitle, postViews, nextAfter);
+
+            return Result.success(topicView);
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
     }
 
-    @Override
-    public Result<TopicView> getTopic(long topicId) {
-        // Check if topic exists and
-        // get topic title, forum id, and forum title
-        final String STMT_1 = "SELECT Topic.title, Topic.forum_id, Forum.title FROM Topic " +
-                "JOIN Forum ON Topic.forum_id = Forum.forum_id " +
-                "WHERE Topic.topic_id = ?";
-
+    /* B.2 */
 
-        Long forumId;
-        String forumName;
-        String topicTitle;
+    // Columns and joins that build a TopicSummaryView from a TopicSummary
+    // row: the topic and its creator, the first post for the creation time
+    // and the last post for the last poster. All of them exist for every
+    // topic, so the left joins only matter when TopicSummary itself is
+    // left joined.
+    private static final String TOPIC_SUMMARY_COLUMNS =
+            "Topic.topic_id, Topic.forum_id, Topic.title, " +
+                    "TopicSummary.post_count, TopicSummary.like_count, TopicSummary.last_post_at, " +
+                    "FirstPost.posted_at, LastPoster.name, Creator.name, Creator.username ";
+    private static final String TOPIC_SUMMARY_JOINS =
+            "LEFT JOIN Topic ON Topic.topic_id = TopicSummary.topic_id " +
+                    "LEFT JOIN Person AS Creator ON Creator.id = Topic.person_id " +
+                    "LEFT JOIN Post AS FirstPost ON FirstPost.topic_id = Topic.topic_id " +
+                    "AND FirstPost.post_number = 1 " +
+                    "LEFT JOIN Post AS LastPost ON LastPost.post_id = TopicSummary.last_post_id " +
+                    "LEFT JOIN Person AS LastPoster ON LastPoster.id = LastPost.person_id ";
 
-        try (PreparedStatement p = c.prepareStatement(STMT_1)) {
-            p.setLong(1,topicId);
-            ResultSet r = p.executeQuery();
+    @Override
+    public Result<List<AdvancedForumSummaryView>> getAdvancedForums() {
+        try (Connection c = pool.getConnection()) {
+            // Get all forums together with a summary of the last topic
+            // in which a post was made, in a single query
+            final String STMT =
+                    "SELECT Forum.forum_id, Forum.title, " + TOPIC_SUMMARY_COLUMNS +
+                            "FROM Forum " +
+                            "LEFT JOIN ForumSummary ON ForumSummary.forum_id = Forum.forum_id " +
+                            "LEFT JOIN TopicSummary ON TopicSummary.topic_id = ForumSummary.last_topic_id " +
+                            TOPIC_SUMMARY_JOINS +
+                            "ORDER BY Forum.title ASC";
+
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+                ResultSet r = p.executeQuery();
+                List<AdvancedForumSummaryView> forumSummaryViews = new ArrayList<>();
+
+                while(r.next()) {
+                    TopicSummaryView lastTopic = null;
+                    if (r.getObject("Topic.topic_id") != null) {
+                        lastTopic = toTopicSummaryView(r);
+                    }
+
+                    AdvancedForumSummaryView forumView = new AdvancedForumSummaryView(
+                            r.getLong("Forum.forum_id"),
+                            r.getString("Forum.title"),
+                            lastTopic
+                    );
 
-            if (!r.next()) {
-                return Result.failure("Topic does not exist.");
-            }
+                    forumSummaryViews.add(forumView);
+                }
 
-            topicTitle = r.getString("Topic.title");
-            forumId = r.getLong("Topic.forum_id");
-            forumName = r.getString("Forum.title");
+                return Result.success(forumSummaryViews);
 
-        } catch(SQLException e) {
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
+        } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
+    }
 
-        // Construct post views
-        final String STMT_2 =
-                "SELECT Post.text, Post.posted_at, Post.total_likes, Person.name, Person.username FROM Post " +
-                        "JOIN Person ON Post.person_id = Person.id " +
-                        "WHERE Post.topic_id = ? " +
-                        "ORDER BY posted_at ASC";
-
-        List<PostView> postViews = new ArrayList<>();
-
-        try(PreparedStatement p = c.prepareStatement(STMT_2)) {
-            p.setLong(1, topicId);
-            ResultSet r = p.executeQuery();
-
-            int postNumber = 0;
-            while(r.next()) {
-                postNumber++;
-
-                PostView postView = new PostView(
-                        forumId,
-                        topicId,
-                        postNumber,
-                        r.getString("Person.name"),
-                        r.getString("Person.username"),
-                        r.getString("text"),
-                        r.getTimestamp("Post.posted_at")
-                                .toLocalDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
-                        r.getInt("Post.total_likes")
-                );
+    @Override
+    public Result<AdvancedPersonView> getAdvancedPersonView(String username) {
+        if (username == null || username.isEmpty()) {
+            return Result.failure("Username cannot be empty.");
+        }
 
-                postViews.add(postView);
+        try (Connection c = pool.getConnection()) {
+            // Get the person with the likes received by their topics and
+            // posts, summed over the person_id foreign key indexes
+            final String STMT_1 = "SELECT Person.id, Person.name, Person.username, Person.stuId, " +
+                    "(SELECT COALESCE(SUM(TopicSummary.like_count), 0) FROM Topic " +
+                    "JOIN TopicSummary ON TopicSummary.topic_id = Topic.topic_id " +
+                    "WHERE Topic.person_id = Person.id) AS topic_likes, " +
+                    "(SELECT COALESCE(SUM(Post.total_likes), 0) FROM Post " +
+                    "WHERE Post.person_id = Person.id) AS post_likes " +
+                    "FROM Person WHERE Person.username = ?";
+
+            // Get summaries of all topics the person liked, in one query
+            final String STMT_2 = "SELECT " + TOPIC_SUMMARY_COLUMNS +
+                    "FROM TopicLikes " +
+                    "JOIN TopicSummary ON TopicSummary.topic_id = TopicLikes.topic_id " +
+                    TOPIC_SUMMARY_JOINS +
+                    "WHERE TopicLikes.person_id = ? " +
+                    "ORDER BY Topic.title ASC";
+
+            try (PreparedStatement p = c.prepareStatement(STMT_1);
+                 PreparedStatement p2 = c.prepareStatement(STMT_2)) {
+                p.setString(1, username);
+                ResultSet r = p.executeQuery();
+
+                if (!r.next()) {
+                    return Result.failure("User not found.");
+                }
+
+                long personId = r.getLong("Person.id");
+                String name = r.getString("Person.name");
+                int topicLikes = r.getInt("topic_likes");
+                int postLikes = r.getInt("post_likes");
+
+                // Takes care of null stuId
+                String stuId = r.getString("Person.stuId");
+                if (stuId == null) {
+                    stuId = "";
+                }
+
+                p2.setLong(1, personId);
+                r = p2.executeQuery();
+
+                List<TopicSummaryView> likedTopics = new ArrayList<>();
+                while (r.next()) {
+                    likedTopics.add(toTopicSummaryView(r));
+                }
+
+                return Result.success(new AdvancedPersonView(
+                        name,
+                        username,
+                        stuId,
+                        topicLikes,
+                        postLikes,
+                        likedTopics
+                ));
+
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
             }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
         }
+    }
 
-        // Avoid exception in case of empty list
-        if (postViews.isEmpty()) {
-            return Result.failure("No posts found.");
+    @Override
+    public Result<AdvancedForumView> getAdvancedForum(long id) {
+        return getAdvancedForum(id, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Result<AdvancedForumView> getAdvancedForum(long id, String after, int pageSize) {
+        if (pageSize < 1) {
+            return Result.failure("Page size must be positive.");
         }
 
-        // Construct topic view
-        TopicView topicView = new TopicView(forumId, topicId, forumName, topicTitle, postViews);
+        // The cursor is the last post time (epoch millis) and id of the
+        // last topic on the previous page, as "<millis>_<topicId>"
+        Timestamp afterPostAt = null;
+        long afterTopicId = 0;
+        if (after != null && !after.isEmpty()) {
+            String[] parts = after.split("_");
+            try {
+                if (parts.length != 2) {
+                    throw new NumberFormatException();
+                }
+                afterPostAt = new Timestamp(Long.parseLong(parts[0]));
+                afterTopicId = Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                return Result.failure("Invalid page cursor.");
+            }
+        }
 
-        return Result.success(topicView);
+        try (Connection c = pool.getConnection()) {
+            // Check if forum exists
+            Result forumExists =   HelperStatements.forumExists(id, c, forums);
+            if (!forumExists.isSuccess()) {
+                return forumExists;
+            }
+            String forumName = forumExists.getValue().toString();
+
+            // Get summaries of the forum's topics, most recent post first,
+            // walking idx_topicsummary_forum_recent from the cursor.
+            // One extra topic tells whether another page follows.
+            final String STMT = "SELECT " + TOPIC_SUMMARY_COLUMNS +
+                    "FROM TopicSummary " +
+                    TOPIC_SUMMARY_JOINS +
+                    "WHERE TopicSummary.forum_id = ? " +
+                    (afterPostAt == null ? "" :
+                            "AND (TopicSummary.last_post_at < ? " +
+                            "OR (TopicSummary.last_post_at = ? AND TopicSummary.topic_id < ?)) ") +
+                    "ORDER BY TopicSummary.last_post_at DESC, TopicSummary.topic_id DESC " +
+                    "LIMIT ?";
+
+            try (PreparedStatement p = c.prepareStatement(STMT)) {
+                int i = 1;
+                p.setLong(i++, id);
+                if (afterPostAt != null) {
+                    p.setTimestamp(i++, afterPostAt);
+                    p.setTimestamp(i++, afterPostAt);
+                    p.setLong(i++, afterTopicId);
+                }
+                p.setLong(i, pageSize + 1L);
+                ResultSet r = p.executeQuery();
+
+                List<TopicSummaryView> topics = new ArrayList<>();
+                String nextAfter = null;
+                String lastCursor = null;
+                while (r.next()) {
+                    if (topics.size() == pageSize) {
+                        nextAfter = lastCursor;
+                        break;
+                    }
+                    lastCursor = r.getTimestamp("TopicSummary.last_post_at").getTime()
+                            + "_" + r.getLong("Topic.topic_id");
+
+                    topics.add(toTopicSummaryView(r));
+                }
+
+                return Result.success(new AdvancedForumView(id, forumName, topics, nextAfter));
+
+            } catch (SQLException e) {
+                return Result.fatal(e.getMessage());
+            }
+        } catch (SQLException e) {
+            return Result.fatal(e.getMessage());
+        }
     }
 
-    /* B.2 */
+    /**
+     * Maps a row with name, username and stuId columns to a PersonView.
+     */
+    private static PersonView toPersonView(ResultSet r) throws SQLException {
+        // Takes care of null stuId
+        String stuId = r.getString("stuId");
+        if (stuId == null) {
+            stuId = "";
+        }
 
-    @Override
-    public Result<List<AdvancedForumSummaryView>> getAdvancedForums() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new PersonView(
+                r.getString("name"),
+                r.getString("username"),
+                stuId
+        );
     }
 
-    @Override
-    public Result<AdvancedPersonView> getAdvancedPersonView(String username) {
-        throw new UnsupportedOperationException("Not supported yet.");
+    /**
+     * Maps a row with the TOPIC_SUMMARY_COLUMNS to a TopicSummaryView.
+     */
+    private TopicSummaryView toTopicSummaryView(ResultSet r) throws SQLException {
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+        return new TopicSummaryView(
+                r.getLong("Topic.topic_id"),
+                r.getLong("Topic.forum_id"),
+                r.getString("Topic.title"),
+                r.getInt("TopicSummary.post_count"),
+                r.getTimestamp("FirstPost.posted_at").toLocalDateTime().format(format),
+                r.getTimestamp("TopicSummary.last_post_at").toLocalDateTime().format(format),
+                r.getString("LastPoster.name"),
+                topicLikes(r.getLong("Topic.topic_id"), r.getInt("TopicSummary.like_count")),
+                r.getString("Creator.name"),
+                r.getString("Creator.username")
+        );
     }
 
-    @Override
-    public Result<AdvancedForumView> getAdvancedForum(long id) {
-        throw new UnsupportedOperationException("Not supported yet.");
+    /**
+     * @return a post's stored like count with the changes still in memory.
+     */
+    private int postLikes(long postId, int stored) {
+        return counters == null ? stored : stored + counters.pendingPostLikes(postId);
+    }
+
+    /**
+     * @return a topic's stored like count with the changes still in memory.
+     */
+    private int topicLikes(long topicId, int stored) {
+        return counters == null ? stored : stored + counters.pendingTopicLikes(topicId);
     }
 }
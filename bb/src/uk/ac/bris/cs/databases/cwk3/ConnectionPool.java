@@ -0,0 +1,571 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of JDBC connections.
+ *
+ * Connections are borrowed per call with getConnection() and handed back by
+ * closing them, so the usual try-with-resources pattern returns them to the
+ * pool. Borrowed connections have auto-commit disabled; any work that was not
+ * committed is rolled back when the connection is returned.
+ *
+ * Each connection also keeps the statements made with prepareStatement(sql)
+ * or prepareStatement(sql, autoGeneratedKeys), keyed by their SQL text and
+ * whether they return generated keys. Closing such a statement keeps it
+ * open for the next caller preparing the same SQL on that connection. This
+ * saves a round-trip per statement with server-side prepares
+ * (useServerPrepStmts=true in the connection string).
+ *
+ * With query counting on, statements handed out also count what they
+ * execute and fetch in the calling thread's QueryCounter, and record what
+ * they execute if it is recording.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    // Seconds allowed for the validation round-trip on borrow
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    private final String url;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    // Most recently returned connections are handed out first
+    private final LinkedBlockingDeque<Physical> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService leakDetector;
+
+    private volatile boolean closed = false;
+    private volatile boolean countingQueries = false;
+
+    /**
+     * Creates a pool and opens its minimum number of connections.
+     * @param url JDBC connection string. useBulkStmts=false is added unless
+     * it sets useBulkStmts, as LikeBatcher needs the row count of every
+     * statement in a batch, which the bulk protocol does not give.
+     * @param minSize number of connections opened up front.
+     * @param maxSize maximum number of connections open at once.
+     * @param borrowTimeoutMillis how long getConnection() waits for a free
+     * connection before giving up.
+     * @param leakThresholdMillis connections borrowed for longer than this are
+     * reported as possible leaks; 0 disables leak detection.
+     * @param statementCacheSize prepared statements kept open per connection;
+     * 0 disables statement caching.
+     * @throws SQLException if the initial connections cannot be opened.
+     */
+    public ConnectionPool(String url, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long leakThresholdMillis,
+                          int statementCacheSize) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size " + minSize + ".." + maxSize);
+        }
+
+        this.url = url.contains("useBulkStmts=") ? url
+                : url + (url.indexOf('?') < 0 ? '?' : '&') + "useBulkStmts=false";
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minSize; i++) {
+            idle.offerLast(open());
+        }
+
+        if (leakThresholdMillis > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "connection-pool-leak-detector");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(leakThresholdMillis / 2, 1);
+            leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * Borrows a connection. Close it to give it back to the pool.
+     * @return A validated connection with auto-commit disabled.
+     * @throws SQLException if the pool is closed, no connection became free
+     * within the borrow timeout or a new connection could not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection.");
+        }
+
+        try {
+            Physical physical = takeValid();
+            Lease lease = new Lease(physical);
+            leases.add(lease);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return leases.size();
+    }
+
+    /**
+     * @return the number of open connections waiting to be borrowed.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the maximum number of connections open at once.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Turns counting of statements and rows in QueryCounter on or off, for
+     * connections borrowed from now on.
+     */
+    public void setCountingQueries(boolean countingQueries) {
+        this.countingQueries = countingQueries;
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed as they
+     * are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+
+        Physical physical;
+        while ((physical = idle.pollFirst()) != null) {
+            physical.close();
+        }
+    }
+
+    private Physical takeValid() throws SQLException {
+        Physical physical;
+        while ((physical = idle.pollFirst()) != null) {
+            if (isValid(physical.connection)) {
+                return physical;
+            }
+            physical.close();
+        }
+        return open();
+    }
+
+    private Physical open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        connection.setAutoCommit(false);
+        return new Physical(connection);
+    }
+
+    private void release(Lease lease) {
+        leases.remove(lease);
+
+        Physical physical = lease.physical;
+        Connection connection = physical.connection;
+        try {
+            // Discard anything the borrower left uncommitted
+            if (!connection.isClosed() && !connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            connection.setAutoCommit(false);
+
+            if (closed || connection.isClosed()) {
+                physical.close();
+            } else {
+                idle.offerFirst(physical);
+            }
+        } catch (SQLException e) {
+            physical.close();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases) {
+            if (!lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                System.err.println("[ConnectionPool] connection held for "
+                        + (now - lease.borrowedAt) + "ms, possible leak");
+                lease.borrower.printStackTrace(System.err);
+            }
+        }
+    }
+
+    private static boolean isValid(Connection physical) {
+        try {
+            return physical.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            // Nothing useful to do with a resource we are discarding
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param sql what a prepared statement was prepared with, or null.
+     * @return a statement of the given interface that counts its
+     * executions and the rows of its result sets.
+     */
+    private static Statement counting(Statement statement, Class<?> type, String sql) {
+        // Parameter values by index, for a recording QueryCounter
+        Map<Integer, Object> parameters = new TreeMap<>();
+        return (Statement) Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[] { type },
+                (o, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return o == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(o);
+                        default:
+                            break;
+                    }
+
+                    if (method.getName().startsWith("set") && args != null
+                            && args.length >= 2 && args[0] instanceof Integer) {
+                        parameters.put((Integer) args[0], args[1]);
+                    } else if (method.getName().equals("clearParameters")) {
+                        parameters.clear();
+                    } else if (method.getName().startsWith("execute")) {
+                        QueryCounter counter = QueryCounter.current();
+                        counter.statements++;
+                        if (counter.executed != null && sql != null) {
+                            counter.executed.add(new QueryCounter.Executed(
+                                    sql, new ArrayList<>(parameters.values())));
+                        }
+                    }
+                    Object result = ConnectionPool.invoke(statement, method, args);
+                    if (result instanceof ResultSet) {
+                        return counting((ResultSet) result);
+                    }
+                    return result;
+                });
+    }
+
+    private static ResultSet counting(ResultSet results) {
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                (o, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return o == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(o);
+                        default:
+                            break;
+                    }
+
+                    Object result = ConnectionPool.invoke(results, method, args);
+                    if (method.getName().equals("next") && (Boolean) result) {
+                        QueryCounter.current().rows++;
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * An open connection and the statements cached on it.
+     */
+    private class Physical {
+        final Connection connection;
+
+        // Least recently used statements are closed once the cache is full
+        private final LinkedHashMap<StatementKey, CachedStatement> statements =
+                new LinkedHashMap<StatementKey, CachedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<StatementKey, CachedStatement> eldest) {
+                        if (size() > statementCacheSize) {
+                            eldest.getValue().evict();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        Physical(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or
+         * Statement.NO_GENERATED_KEYS.
+         * @return The cached statement for sql, preparing it on first use.
+         * If the cached one is still in use a plain statement is returned.
+         */
+        PreparedStatement prepare(String sql, int autoGeneratedKeys, Connection owner) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return connection.prepareStatement(sql, autoGeneratedKeys);
+            }
+
+            StatementKey key = new StatementKey(sql, autoGeneratedKeys);
+            CachedStatement cached = statements.get(key);
+            if (cached == null) {
+                cached = new CachedStatement(connection.prepareStatement(sql, autoGeneratedKeys));
+                statements.put(key, cached);
+            } else if (cached.inUse) {
+                return connection.prepareStatement(sql, autoGeneratedKeys);
+            }
+            return cached.borrow(owner);
+        }
+
+        void close() {
+            for (Iterator<CachedStatement> i = statements.values().iterator(); i.hasNext(); ) {
+                i.next().evict();
+                i.remove();
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * What a cached statement was prepared with.
+     */
+    private static final class StatementKey {
+        final String sql;
+        final int autoGeneratedKeys;
+
+        StatementKey(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StatementKey)) {
+                return false;
+            }
+            StatementKey k = (StatementKey) o;
+            return autoGeneratedKeys == k.autoGeneratedKeys && sql.equals(k.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return sql.hashCode() * 31 + autoGeneratedKeys;
+        }
+    }
+
+    /**
+     * A statement kept open between uses. Callers get a proxy whose close()
+     * clears the parameters and hands the statement back instead.
+     */
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        // Closed on give back so a large result is not kept until the next use
+        ResultSet lastResult = null;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement borrow(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new InvocationHandler() {
+                        private boolean returned = false;
+
+                        @Override
+                        public Object invoke(Object o, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                                case "close":
+                                    if (!returned) {
+                                        returned = true;
+                                        giveBack();
+                                    }
+                                    return null;
+                                case "isClosed":
+                                    return returned || statement.isClosed();
+                                case "getConnection":
+                                    return owner;
+                                case "equals":
+                                    return o == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(o);
+                                default:
+                                    break;
+                            }
+
+                            if (returned) {
+                                throw new SQLException("Statement has already been closed.");
+                            }
+
+                            Object result = ConnectionPool.invoke(statement, method, args);
+                            if (method.getName().equals("executeQuery")
+                                    || method.getName().equals("getGeneratedKeys")) {
+                                lastResult = (ResultSet) result;
+                            }
+                            return result;
+                        }
+                    });
+        }
+
+        void giveBack() {
+            inUse = false;
+            if (lastResult != null) {
+                closeQuietly(lastResult);
+                lastResult = null;
+            }
+
+            if (evicted) {
+                closeQuietly(statement);
+                return;
+            }
+
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                closeQuietly(statement);
+                evicted = true;
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly(statement);
+            }
+        }
+    }
+
+    /**
+     * One borrowing of a physical connection. The proxy handed to the caller
+     * turns close() into a return to the pool and refuses use afterwards.
+     */
+    private class Lease implements InvocationHandler {
+        final Physical physical;
+        final Connection proxy;
+        final long borrowedAt = System.currentTimeMillis();
+        final Throwable borrower;
+
+        volatile boolean reported = false;
+        private boolean returned = false;
+        private final boolean counting = countingQueries;
+
+        Lease(Physical physical) {
+            this.physical = physical;
+            this.borrower = leakThresholdMillis > 0
+                    ? new Throwable("Connection borrowed here")
+                    : null;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    this);
+        }
+
+        @Override
+        public synchronized Object invoke(Object o, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.connection.isClosed();
+                case "equals":
+                    return o == args[0];
+                case "hashCode":
+                    return System.identityHashCode(o);
+                case "toString":
+                    return "Pooled " + physical.connection;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+
+            Object result;
+            if (method.getName().equals("prepareStatement") && args.length == 1) {
+                result = physical.prepare((String) args[0], Statement.NO_GENERATED_KEYS, proxy);
+            } else if (method.getName().equals("prepareStatement") && args.length == 2
+                    && method.getParameterTypes()[1] == int.class) {
+                result = physical.prepare((String) args[0], (Integer) args[1], proxy);
+            } else {
+                result = ConnectionPool.invoke(physical.connection, method, args);
+            }
+
+            if (counting && result instanceof Statement) {
+                String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                return counting((Statement) result, method.getReturnType(), sql);
+            }
+            return result;
+        }
+    }
+}
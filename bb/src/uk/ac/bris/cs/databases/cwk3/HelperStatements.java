@@ -12,6 +12,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 public class HelperStatements {
 
@@ -19,10 +20,17 @@ public class HelperStatements {
      * Checks if a topic exists.
      * @param topicId
      * @param c
+     * @param topics the titles of topics found before, by id.
      * @return Success with title if exists, failure otherwise.
      * Fatal on database errors.
      */
-    static Result<String> topicExists(Long topicId, Connection c) {
+    static Result<String> topicExists(Long topicId, Connection c,
+                                      LookupCache<Long, String> topics) {
+        String cached = topics.get(topicId);
+        if (cached != null) {
+            return Result.success(cached);
+        }
+
         final String STMT = "SELECT title FROM Topic WHERE topic_id = ?";
 
         try (PreparedStatement p = c.prepareStatement(STMT)){
@@ -30,7 +38,9 @@ public class HelperStatements {
             ResultSet r = p.executeQuery();
 
             if (r.next()) {
-                return Result.success(r.getString("title"));
+                String title = r.getString("title");
+                topics.put(topicId, title);
+                return Result.success(title);
             }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
@@ -43,10 +53,17 @@ public class HelperStatements {
      * Checks if a forum exists.
      * @param forumId
      * @param c
+     * @param forums the titles of forums found before, by id.
      * @return Success with title if exists, failure otherwise.
      * Fatal on database errors.
      */
-    static Result<String> forumExists(Long forumId, Connection c) {
+    static Result<String> forumExists(Long forumId, Connection c,
+                                      LookupCache<Long, String> forums) {
+        String cached = forums.get(forumId);
+        if (cached != null) {
+            return Result.success(cached);
+        }
+
         final String STMT = "SELECT title FROM  Forum WHERE forum_id = ?";
 
         try (PreparedStatement p = c.prepareStatement(STMT)){
@@ -54,7 +71,9 @@ public class HelperStatements {
             ResultSet r = p.executeQuery();
 
             if (r.next()) {
-                return Result.success(r.getString("title"));
+                String title = r.getString("title");
+                forums.put(forumId, title);
+                return Result.success(title);
             }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
@@ -67,18 +86,27 @@ public class HelperStatements {
      * Checks if a person exists.
      * @param username
      * @param c
+     * @param people the ids of people found before, by username.
      * @return Success with userId if exists, failure otherwise.
      * Fatal on database errors.
      */
-    static Result<Long> getPersonId(String username, Connection c) {
-        final String STMT = "SELECT id FROM Person WHERE name = ?";
+    static Result<Long> getPersonId(String username, Connection c,
+                                    LookupCache<String, Long> people) {
+        Long cached = people.get(username);
+        if (cached != null) {
+            return Result.success(cached);
+        }
+
+        final String STMT = "SELECT id FROM Person WHERE username = ?";
 
         try(PreparedStatement p = c.prepareStatement(STMT)) {
             p.setString(1, username);
             ResultSet r = p.executeQuery();
 
             if (r.next()) {
-                return Result.success(r.getLong("id"));
+                Long id = r.getLong("id");
+                people.put(username, id);
+                return Result.success(id);
             }
         } catch (SQLException e) {
             return Result.fatal(e.getMessage());
@@ -86,4 +114,40 @@ public class HelperStatements {
 
         return Result.failure("User does not exist.");
     }
+
+    /**
+     * Adds changes in likes to the stored like counts of posts, and of
+     * topics and their forums, as part of the caller's transaction.
+     * @param c
+     * @param topicDeltas change in likes per topic id.
+     * @param postDeltas change in likes per post id.
+     * @throws SQLException on database errors, the caller rolls back.
+     */
+    static void addLikeCounts(Connection c, Map<Long, Long> topicDeltas,
+                              Map<Long, Long> postDeltas) throws SQLException {
+        final String STMT_1 = "UPDATE TopicSummary SET like_count = like_count + ? WHERE topic_id = ?";
+        final String STMT_2 = "UPDATE ForumSummary SET like_count = like_count + ? " +
+                "WHERE forum_id = (SELECT forum_id FROM TopicSummary WHERE topic_id = ?)";
+        final String STMT_3 = "UPDATE Post SET total_likes = total_likes + ? WHERE post_id = ?";
+
+        addDeltas(c, STMT_1, topicDeltas);
+        addDeltas(c, STMT_2, topicDeltas);
+        addDeltas(c, STMT_3, postDeltas);
+    }
+
+    private static void addDeltas(Connection c, String sql,
+                                  Map<Long, Long> deltas) throws SQLException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement p = c.prepareStatement(sql)) {
+            for (Map.Entry<Long, Long> e : deltas.entrySet()) {
+                p.setLong(1, e.getValue());
+                p.setLong(2, e.getKey());
+                p.addBatch();
+            }
+            p.executeBatch();
+        }
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.AdvancedForumSummaryView;
+import uk.ac.bris.cs.databases.api.AdvancedForumView;
+import uk.ac.bris.cs.databases.api.AdvancedPersonView;
+import uk.ac.bris.cs.databases.api.ForumStreamView;
+import uk.ac.bris.cs.databases.api.ForumSummaryView;
+import uk.ac.bris.cs.databases.api.ForumView;
+import uk.ac.bris.cs.databases.api.PersonView;
+import uk.ac.bris.cs.databases.api.PostView;
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.ResultCursor;
+import uk.ac.bris.cs.databases.api.SimpleForumSummaryView;
+import uk.ac.bris.cs.databases.api.SimpleTopicView;
+import uk.ac.bris.cs.databases.api.TopicView;
+import uk.ac.bris.cs.databases.util.LatencyHistogram;
+
+/**
+ * An APIProvider that times every call to another one and counts its
+ * outcomes. If the pool underneath counts queries (see
+ * ConnectionPool.setCountingQueries), it also adds up the statements and
+ * rows each method took.
+ *
+ * Overloads of a method share its numbers. Rows a cursor fetches after its
+ * method has returned are not counted against the method.
+ */
+public class InstrumentedAPI implements APIProvider {
+
+    private final APIProvider api;
+    private final List<MethodStats> methods = new ArrayList<>();
+
+    private final MethodStats getUsers = method("getUsers");
+    private final MethodStats streamUsers = method("streamUsers");
+    private final MethodStats getPersonView = method("getPersonView");
+    private final MethodStats addNewPerson = method("addNewPerson");
+    private final MethodStats getSimpleForums = method("getSimpleForums");
+    private final MethodStats streamSimpleForums = method("streamSimpleForums");
+    private final MethodStats createForum = method("createForum");
+    private final MethodStats getForums = method("getForums");
+    private final MethodStats getForum = method("getForum");
+    private final MethodStats streamForum = method("streamForum");
+    private final MethodStats getSimpleTopic = method("getSimpleTopic");
+    private final MethodStats getLatestPost = method("getLatestPost");
+    private final MethodStats createPost = method("createPost");
+    private final MethodStats createTopic = method("createTopic");
+    private final MethodStats countPostsInTopic = method("countPostsInTopic");
+    private final MethodStats likeTopic = method("likeTopic");
+    private final MethodStats likePost = method("likePost");
+    private final MethodStats getLikers = method("getLikers");
+    private final MethodStats streamLikers = method("streamLikers");
+    private final MethodStats getTopic = method("getTopic");
+    private final MethodStats getAdvancedForums = method("getAdvancedForums");
+    private final MethodStats getAdvancedPersonView = method("getAdvancedPersonView");
+    private final MethodStats getAdvancedForum = method("getAdvancedForum");
+
+    public InstrumentedAPI(APIProvider api) {
+        this.api = api;
+    }
+
+    /**
+     * @return the API being timed.
+     */
+    public APIProvider getApi() {
+        return api;
+    }
+
+    /**
+     * @return the numbers for every method, in interface order.
+     */
+    public List<MethodStats> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    private MethodStats method(String name) {
+        MethodStats stats = new MethodStats(name);
+        methods.add(stats);
+        return stats;
+    }
+
+    // R rather than Result<T>, so the methods APIProvider declares with a
+    // raw Result can return Result<?> without an unchecked conversion
+    private static <R extends Result<?>> R call(MethodStats stats, Supplier<R> call) {
+        QueryCounter queries = QueryCounter.current();
+        long statements = queries.statements;
+        long rows = queries.rows;
+        long start = System.nanoTime();
+
+        R r = null;
+        try {
+            r = call.get();
+            return r;
+        } finally {
+            stats.latency.record(System.nanoTime() - start);
+            stats.statements.add(queries.statements - statements);
+            stats.rows.add(queries.rows - rows);
+            // An exception counts as fatal
+            if (r == null || r.isFatal()) {
+                stats.fatal.increment();
+            } else if (!r.isSuccess()) {
+                stats.failure.increment();
+            }
+        }
+    }
+
+    /* A.1 */
+
+    @Override
+    public Result<Map<String, String>> getUsers() {
+        return call(getUsers, () -> api.getUsers());
+    }
+
+    @Override
+    public Result<ResultCursor<PersonView>> streamUsers() {
+        return call(streamUsers, () -> api.streamUsers());
+    }
+
+    @Override
+    public Result<PersonView> getPersonView(String username) {
+        return call(getPersonView, () -> api.getPersonView(username));
+    }
+
+    @Override
+    public Result<?> addNewPerson(String name, String username, String studentId) {
+        return call(addNewPerson, () -> api.addNewPerson(name, username, studentId));
+    }
+
+    /* A.2 */
+
+    @Override
+    public Result<List<SimpleForumSummaryView>> getSimpleForums() {
+        return call(getSimpleForums, () -> api.getSimpleForums());
+    }
+
+    @Override
+    public Result<ResultCursor<SimpleForumSummaryView>> streamSimpleForums() {
+        return call(streamSimpleForums, () -> api.streamSimpleForums());
+    }
+
+    @Override
+    public Result<?> createForum(String title) {
+        return call(createForum, () -> api.createForum(title));
+    }
+
+    /* A.3 */
+
+    @Override
+    public Result<List<ForumSummaryView>> getForums() {
+        return call(getForums, () -> api.getForums());
+    }
+
+    @Override
+    public Result<ForumView> getForum(long id) {
+        return call(getForum, () -> api.getForum(id));
+    }
+
+    @Override
+    public Result<ForumStreamView> streamForum(long id) {
+        return call(streamForum, () -> api.streamForum(id));
+    }
+
+    @Override
+    public Result<SimpleTopicView> getSimpleTopic(long topicId) {
+        return call(getSimpleTopic, () -> api.getSimpleTopic(topicId));
+    }
+
+    @Override
+    public Result<SimpleTopicView> getSimpleTopic(long topicId, long after, int pageSize) {
+        return call(getSimpleTopic, () -> api.getSimpleTopic(topicId, after, pageSize));
+    }
+
+    @Override
+    public Result<PostView> getLatestPost(long topicId) {
+        return call(getLatestPost, () -> api.getLatestPost(topicId));
+    }
+
+    @Override
+    public Result<?> createPost(long topicId, String username, String text) {
+        return call(createPost, () -> api.createPost(topicId, username, text));
+    }
+
+    @Override
+    public Result<?> createTopic(long forumId, String username, String title, String text) {
+        return call(createTopic, () -> api.createTopic(forumId, username, title, text));
+    }
+
+    @Override
+    public Result<Integer> countPostsInTopic(long topicId) {
+        return call(countPostsInTopic, () -> api.countPostsInTopic(topicId));
+    }
+
+    /* B.1 */
+
+    @Override
+    public Result<?> likeTopic(String username, long topicId, boolean like) {
+        return call(likeTopic, () -> api.likeTopic(username, topicId, like));
+    }
+
+    @Override
+    public Result<?> likePost(String username, long topicId, int post, boolean like) {
+        return call(likePost, () -> api.likePost(username, topicId, post, like));
+    }
+
+    @Override
+    public Result<List<PersonView>> getLikers(long topicId) {
+        return call(getLikers, () -> api.getLikers(topicId));
+    }
+
+    @Override
+    public Result<ResultCursor<PersonView>> streamLikers(long topicId) {
+        return call(streamLikers, () -> api.streamLikers(topicId));
+    }
+
+    @Override
+    public Result<TopicView> getTopic(long topicId) {
+        return call(getTopic, () -> api.getTopic(topicId));
+    }
+
+    @Override
+    public Result<TopicView> getTopic(long topicId, long after, int pageSize) {
+        return call(getTopic, () -> api.getTopic(topicId, after, pageSize));
+    }
+
+    /* B.2 */
+
+    @Override
+    public Result<List<AdvancedForumSummaryView>> getAdvancedForums() {
+        return call(getAdvancedForums, () -> api.getAdvancedForums());
+    }
+
+    @Override
+    public Result<AdvancedPersonView> getAdvancedPersonView(String username) {
+        return call(getAdvancedPersonView, () -> api.getAdvancedPersonView(username));
+    }
+
+    @Override
+    public Result<AdvancedForumView> getAdvancedForum(long id) {
+        return call(getAdvancedForum, () -> api.getAdvancedForum(id));
+    }
+
+    @Override
+    public Result<AdvancedForumView> getAdvancedForum(long id, String after, int pageSize) {
+        return call(getAdvancedForum, () -> api.getAdvancedForum(id, after, pageSize));
+    }
+
+    /**
+     * What one method has done since the server started. Successful calls
+     * are the latency count less the failures and fatal errors.
+     */
+    public static final class MethodStats {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failure = new LongAdder();
+        private final LongAdder fatal = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private MethodStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return call latencies in nanoseconds.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getFailures() {
+            return failure.sum();
+        }
+
+        public long getFatalErrors() {
+            return fatal.sum();
+        }
+
+        public long getStatements() {
+            return statements.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+    }
+}
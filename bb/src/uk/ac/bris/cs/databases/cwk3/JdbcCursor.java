@@ -0,0 +1,146 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.ResultCursor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+/**
+ * A ResultCursor over a streamed JDBC result set. The driver fetches rows
+ * from the server in batches of FETCH_SIZE, so only one batch is in memory
+ * at a time. The cursor owns its connection and gives it back to the pool
+ * when closed.
+ * @param <T> the view each row is mapped to.
+ */
+class JdbcCursor<T> implements ResultCursor<T> {
+
+    private static final int FETCH_SIZE = Integer.getInteger("bb.cursor.fetchSize", 500);
+
+    /**
+     * Sets the parameters of the cursor's statement.
+     */
+    interface Binder {
+        void bind(PreparedStatement p) throws SQLException;
+    }
+
+    /**
+     * Maps the current row to a view.
+     */
+    interface RowMapper<T> {
+        T map(ResultSet r) throws SQLException;
+    }
+
+    private final Connection c;
+    private final PreparedStatement p;
+    private final ResultSet r;
+    private final RowMapper<T> mapper;
+
+    private T next = null;
+    private boolean closed = false;
+
+    private JdbcCursor(Connection c, PreparedStatement p, ResultSet r, RowMapper<T> mapper) {
+        this.c = c;
+        this.p = p;
+        this.r = r;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Runs a query and returns a cursor over its rows. The cursor takes over
+     * the connection: it is closed on failure, or when the cursor is.
+     * @param c
+     * @param sql
+     * @param binder sets the statement's parameters.
+     * @param mapper maps each row to a view.
+     * @return Success with the cursor, fatal on database errors.
+     */
+    static <T> Result<ResultCursor<T>> open(Connection c, String sql,
+                                            Binder binder, RowMapper<T> mapper) {
+        PreparedStatement p = null;
+        try {
+            // Not the single argument prepareStatement, so the pool does not
+            // cache it; the statement lives as long as the cursor.
+            p = c.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            p.setFetchSize(FETCH_SIZE);
+            binder.bind(p);
+            ResultSet r = p.executeQuery();
+            return Result.success(new JdbcCursor<>(c, p, r, mapper));
+        } catch (SQLException e) {
+            closeQuietly(p);
+            closeQuietly(c);
+            // Result.fatal is raw; a fatal result holds no value to mistype
+            @SuppressWarnings("unchecked")
+            Result<ResultCursor<T>> fatal = Result.fatal(e.getMessage());
+            return fatal;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+
+        try {
+            if (r.next()) {
+                next = mapper.map(r);
+                return true;
+            }
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("Database error - " + e.getMessage(), e);
+        }
+
+        // Read to the end, so give the connection back straight away
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T value = next;
+        next = null;
+        return value;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(r);
+        closeQuietly(p);
+        closeQuietly(c);
+    }
+
+    /**
+     * Closes a connection, statement or result set, ignoring errors.
+     */
+    static void closeQuietly(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception e) {
+            // Nothing useful to do with a resource we are discarding
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import uk.ac.bris.cs.databases.api.Result;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind for topic and post likes.
+ *
+ * Like and unlike commands are queued in memory and written by a single
+ * background thread, a batch at a time: one JDBC batch per statement kind
+ * and one commit for the whole batch. Commands for the same person and
+ * target that arrive before a flush are coalesced, the last one wins, and
+ * the like counts are updated once per target with the net change.
+ *
+ * A batch is flushed every flushIntervalMillis, or as soon as it holds
+ * maxBatchSize commands. If awaitCommit is set, callers wait until the
+ * batch holding their command has committed, so a success is durable.
+ * Otherwise they return straight away and a crash can lose the commands
+ * of the last flush interval.
+ *
+ * A batch that fails is written again one command per transaction, so a
+ * deadlock or one bad command does not lose the rest. Commands that still
+ * fail are reported on stderr and counted, see getLostCount.
+ *
+ * As the post like counts change only once a batch commits, whatever
+ * shows them should be refreshed then, see setOnCommit.
+ */
+public class LikeBatcher implements AutoCloseable {
+
+    // Longest a caller waits for its batch to commit when awaiting commits
+    private static final long COMMIT_TIMEOUT_MILLIS = 30000;
+
+    private final ConnectionPool pool;
+    // Takes the like count changes when set, instead of the batch
+    private final LikeCounters counters;
+    private final int maxBatchSize;
+    private final boolean awaitCommit;
+
+    private final ScheduledExecutorService flusher;
+
+    // Given the topics of the posts liked or unliked in each committed batch
+    private volatile Consumer<Set<Long>> onCommit;
+
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    // Guarded by this
+    private LinkedHashMap<Key, Pending> pending = new LinkedHashMap<>();
+    private boolean closed = false;
+
+    /**
+     * @param pool where batches get their connection from.
+     * @param counters in-memory like counts to update, or null to update
+     * the stored counts in each batch.
+     * @param flushIntervalMillis the longest a command waits to be written.
+     * @param maxBatchSize commands that trigger a flush before the interval.
+     * @param awaitCommit whether callers wait for their command to commit.
+     */
+    public LikeBatcher(ConnectionPool pool, LikeCounters counters, long flushIntervalMillis,
+                       int maxBatchSize, boolean awaitCommit) {
+        this.pool = pool;
+        this.counters = counters;
+        this.maxBatchSize = maxBatchSize;
+        this.awaitCommit = awaitCommit;
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "like-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets what to call on the flusher thread after each batch commits,
+     * with the topics whose posts were liked or unliked in it, e.g. to
+     * invalidate cached pages showing their like counts.
+     * @param onCommit the callback, or null for none.
+     */
+    public void setOnCommit(Consumer<Set<Long>> onCommit) {
+        this.onCommit = onCommit;
+    }
+
+    /**
+     * @return the number of batches that failed and were written again one
+     * command at a time.
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    /**
+     * @return the number of commands that failed on their own as well, and
+     * so were never written.
+     */
+    public long getLostCount() {
+        return lost.sum();
+    }
+
+    /**
+     * Queues a like or unlike of a topic. The person and topic must exist.
+     * @return Success once queued, or once committed if awaiting commits.
+     * Fatal if the batch holding the command failed or did not commit in time.
+     */
+    Result<?> likeTopic(long personId, long topicId, boolean like) {
+        return submit(new Key(true, topicId, personId), topicId, like);
+    }
+
+    /**
+     * Queues a like or unlike of a post. The person and post must exist.
+     * @param topicId the topic of the post.
+     * @return Success once queued, or once committed if awaiting commits.
+     * Fatal if the batch holding the command failed or did not commit in time.
+     */
+    Result<?> likePost(long personId, long topicId, long postId, boolean like) {
+        return submit(new Key(false, postId, personId), topicId, like);
+    }
+
+    /**
+     * Stops the background flushes and writes what is still queued.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private Result<?> submit(Key key, long topicId, boolean like) {
+        CompletableFuture<Void> done;
+        boolean full;
+        synchronized (this) {
+            if (closed) {
+                return Result.fatal("Like writer is closed.");
+            }
+
+            Pending p = pending.get(key);
+            if (p == null) {
+                p = new Pending(topicId);
+                pending.put(key, p);
+            }
+            p.like = like;
+            done = p.done;
+            full = pending.size() >= maxBatchSize;
+        }
+
+        if (full) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Closing, and close() flushes what is left
+            }
+        }
+
+        if (!awaitCommit) {
+            return Result.success();
+        }
+
+        try {
+            done.get(COMMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return Result.success();
+        } catch (ExecutionException e) {
+            return Result.fatal(e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            return Result.fatal("Timed out waiting for the like to be written.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.fatal("Interrupted waiting for the like to be written.");
+        }
+    }
+
+    /**
+     * Writes everything queued so far as one transaction, or if that fails,
+     * one transaction per command. Never throws, as an exception would
+     * cancel the scheduled flushes for good; commands that fail on their own
+     * too are lost and their callers get the error.
+     */
+    private void flush() {
+        Map<Key, Pending> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        try {
+            write(batch);
+            committed(batch);
+            return;
+        } catch (SQLException | RuntimeException e) {
+            failedBatches.increment();
+            System.err.println("[LikeBatcher] batch of " + batch.size()
+                    + " failed, writing it one like at a time - " + e);
+        }
+
+        // A deadlock has most likely cleared by now, and a bad command
+        // fails on its own
+        int failed = 0;
+        Exception last = null;
+        for (Map.Entry<Key, Pending> e : batch.entrySet()) {
+            Map<Key, Pending> one = Collections.singletonMap(e.getKey(), e.getValue());
+            try {
+                write(one);
+                committed(one);
+            } catch (SQLException | RuntimeException f) {
+                e.getValue().done.completeExceptionally(f);
+                failed++;
+                last = f;
+            }
+        }
+        if (failed > 0) {
+            lost.add(failed);
+            System.err.println("[LikeBatcher] " + failed + " of " + batch.size()
+                    + " likes lost - " + last);
+        }
+    }
+
+    /**
+     * Tells the callback and then the callers that a batch has committed.
+     */
+    private void committed(Map<Key, Pending> batch) {
+        // Before the callers hear of the commit, so that what they read
+        // next already shows it
+        Consumer<Set<Long>> callback = onCommit;
+        if (callback != null) {
+            Set<Long> topics = new HashSet<>();
+            for (Map.Entry<Key, Pending> e : batch.entrySet()) {
+                if (!e.getKey().topic) {
+                    topics.add(e.getValue().topicId);
+                }
+            }
+            if (!topics.isEmpty()) {
+                try {
+                    callback.accept(topics);
+                } catch (RuntimeException e) {
+                    System.err.println("[LikeBatcher] commit callback failed - " + e);
+                }
+            }
+        }
+
+        for (Pending p : batch.values()) {
+            p.done.complete(null);
+        }
+    }
+
+    private void write(Map<Key, Pending> batch) throws SQLException {
+        List<Key> topicLikes = new ArrayList<>();
+        List<Key> topicUnlikes = new ArrayList<>();
+        List<Key> postLikes = new ArrayList<>();
+        List<Key> postUnlikes = new ArrayList<>();
+        for (Map.Entry<Key, Pending> e : batch.entrySet()) {
+            Key key = e.getKey();
+            if (key.topic) {
+                (e.getValue().like ? topicLikes : topicUnlikes).add(key);
+            } else {
+                (e.getValue().like ? postLikes : postUnlikes).add(key);
+            }
+        }
+
+        // Net change in likes per target, in id order so that concurrent
+        // transactions lock the rows in the same order
+        Map<Long, Long> topicDeltas = new TreeMap<>();
+        Map<Long, Long> postDeltas = new TreeMap<>();
+
+        try (Connection c = pool.getConnection()) {
+            try {
+                // Likes that already exist and unlikes of likes that do not
+                // affect no rows, and so do not count
+                addLikes(c, "INSERT IGNORE INTO TopicLikes(topic_id, person_id) VALUES (?, ?)",
+                        topicLikes, 1, topicDeltas);
+                addLikes(c, "DELETE FROM TopicLikes WHERE topic_id = ? AND person_id = ?",
+                        topicUnlikes, -1, topicDeltas);
+                addLikes(c, "INSERT IGNORE INTO PostLikes(post_id, person_id) VALUES (?, ?)",
+                        postLikes, 1, postDeltas);
+                addLikes(c, "DELETE FROM PostLikes WHERE post_id = ? AND person_id = ?",
+                        postUnlikes, -1, postDeltas);
+
+                topicDeltas.values().removeIf(d -> d == 0);
+                postDeltas.values().removeIf(d -> d == 0);
+
+                // Keep the like counts in step, or leave it to the
+                // in-memory counters once committed
+                if (counters == null) {
+                    HelperStatements.addLikeCounts(c, topicDeltas, postDeltas);
+                }
+
+                c.commit();
+            } catch (SQLException e) {
+                try {
+                    c.rollback();
+                } catch (SQLException f) {
+                    // The pool rolls back again when the connection is returned
+                }
+                throw e;
+            }
+        }
+
+        if (counters != null) {
+            for (Map.Entry<Long, Long> e : topicDeltas.entrySet()) {
+                counters.addTopicLikes(e.getKey(), e.getValue());
+            }
+            for (Map.Entry<Long, Long> e : postDeltas.entrySet()) {
+                counters.addPostLikes(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static void addLikes(Connection c, String sql, List<Key> keys, long delta,
+                                 Map<Long, Long> deltas) throws SQLException {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement p = c.prepareStatement(sql)) {
+            for (Key key : keys) {
+                p.setLong(1, key.targetId);
+                p.setLong(2, key.personId);
+                p.addBatch();
+            }
+
+            int[] rowsAffected = p.executeBatch();
+            for (int i = 0; i < rowsAffected.length; i++) {
+                // Without row counts the like counts would silently stop
+                // changing, see ConnectionPool
+                if (rowsAffected[i] == Statement.SUCCESS_NO_INFO) {
+                    throw new SQLException("No row counts from the like batch; "
+                            + "connect with useBulkStmts=false.");
+                }
+                if (rowsAffected[i] > 0) {
+                    deltas.merge(keys.get(i).targetId, delta, Long::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * A person's like of a topic or a post.
+     */
+    private static final class Key {
+        final boolean topic;
+        final long targetId;
+        final long personId;
+
+        Key(boolean topic, long targetId, long personId) {
+            this.topic = topic;
+            this.targetId = targetId;
+            this.personId = personId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return topic == k.topic && targetId == k.targetId && personId == k.personId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(topic, targetId, personId);
+        }
+    }
+
+    /**
+     * The latest command for a key and the callers waiting for it.
+     */
+    private static final class Pending {
+        // The topic liked, or the topic of the post liked
+        final long topicId;
+        boolean like;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(long topicId) {
+            this.topicId = topicId;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory like counts for posts and topics.
+ *
+ * Likes that have been committed add to a LongAdder per post or topic
+ * instead of updating Post.total_likes and the summaries row by row, so
+ * people liking the same popular post do not queue up on its row lock.
+ * Every reconcileIntervalMillis the accumulated changes are written to the
+ * database in one transaction. Reads add the changes not written yet to
+ * the stored counts.
+ *
+ * Changes are collected in generations: reconciling swaps in a fresh
+ * generation, waits for the few writers still adding to the old one, and
+ * writes the old one out. Only targets liked within one interval are held.
+ *
+ * A generation is counted by reads until the transaction writing it has
+ * committed, and never after, so a change is not counted twice. The stored
+ * count and the pending change are not read in one snapshot, though: a read
+ * whose query ran before a reconciliation committed, but which asks for the
+ * pending change after, misses that generation's changes. Counts can
+ * therefore be low by up to one interval's likes for reads overlapping a
+ * commit, and are exact again on the next read.
+ *
+ * The like rows themselves (TopicLikes, PostLikes) are always committed
+ * before a count changes. Counts not yet reconciled when the process dies
+ * are lost, but can be recomputed from those rows.
+ */
+public class LikeCounters implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final ScheduledExecutorService reconciler;
+
+    private volatile Generation current = new Generation();
+    // The generation being written, counted by reads until committed
+    private volatile Generation reconciling = null;
+
+    /**
+     * @param pool where reconciliation gets its connection from.
+     * @param reconcileIntervalMillis how often counts are written out.
+     */
+    public LikeCounters(ConnectionPool pool, long reconcileIntervalMillis) {
+        this.pool = pool;
+
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "like-counters");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcile,
+                reconcileIntervalMillis, reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a committed change in the likes of a post.
+     */
+    void addPostLikes(long postId, long delta) {
+        add(false, postId, delta);
+    }
+
+    /**
+     * Records a committed change in the likes of a topic.
+     */
+    void addTopicLikes(long topicId, long delta) {
+        add(true, topicId, delta);
+    }
+
+    /**
+     * @return the change in a post's likes not yet in Post.total_likes.
+     */
+    int pendingPostLikes(long postId) {
+        return pending(false, postId);
+    }
+
+    /**
+     * @return the change in a topic's likes not yet in TopicSummary.
+     */
+    int pendingTopicLikes(long topicId) {
+        return pending(true, topicId);
+    }
+
+    /**
+     * Stops the periodic reconciliation and writes out what is left.
+     */
+    @Override
+    public void close() {
+        reconciler.shutdown();
+        try {
+            reconciler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reconcile();
+    }
+
+    private void add(boolean topic, long id, long delta) {
+        for (;;) {
+            Generation g = current;
+            g.writers.increment();
+            try {
+                // Re-check after announcing ourselves: either the reconciler
+                // has not swapped yet and will wait for us, or we retry on
+                // the new generation
+                if (g == current) {
+                    g.counts(topic).computeIfAbsent(id, k -> new LongAdder()).add(delta);
+                    return;
+                }
+            } finally {
+                g.writers.decrement();
+            }
+        }
+    }
+
+    private int pending(boolean topic, long id) {
+        // Current first: reconcile sets reconciling before swapping current,
+        // so a generation being swapped out is seen as one or the other
+        Generation c = current;
+        Generation r = reconciling;
+
+        long sum = sum(c, topic, id);
+        if (r != null && r != c) {
+            sum += sum(r, topic, id);
+        }
+        return (int) sum;
+    }
+
+    private static long sum(Generation g, boolean topic, long id) {
+        if (g.committed) {
+            return 0;
+        }
+        LongAdder adder = g.counts(topic).get(id);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Writes the current generation's changes to the database. Only ever
+     * runs on the reconciler thread, or after it has stopped.
+     */
+    private void reconcile() {
+        Generation g = current;
+        if (g.posts.isEmpty() && g.topics.isEmpty()) {
+            return;
+        }
+
+        reconciling = g;
+        current = new Generation();
+        while (g.writers.sum() != 0) {
+            Thread.yield();
+        }
+
+        Map<Long, Long> postDeltas = drain(g.posts);
+        Map<Long, Long> topicDeltas = drain(g.topics);
+
+        try (Connection c = pool.getConnection()) {
+            try {
+                HelperStatements.addLikeCounts(c, topicDeltas, postDeltas);
+                c.commit();
+                // The stored counts have it now; stop adding it to them
+                g.committed = true;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Carry the changes over to the next attempt. Reads stop counting
+            // the old generation first, so they are never counted twice.
+            System.err.println("[LikeCounters] reconciliation failed, retrying - " + e);
+            reconciling = null;
+            for (Map.Entry<Long, Long> entry : postDeltas.entrySet()) {
+                add(false, entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Long, Long> entry : topicDeltas.entrySet()) {
+                add(true, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            reconciling = null;
+        }
+    }
+
+    /**
+     * @return the non-zero changes, in id order so that row locks are
+     * taken in the same order as other transactions.
+     */
+    private static Map<Long, Long> drain(Map<Long, LongAdder> counts) {
+        Map<Long, Long> deltas = new TreeMap<>();
+        for (Map.Entry<Long, LongAdder> entry : counts.entrySet()) {
+            long delta = entry.getValue().sum();
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Changes made between two reconciliations.
+     */
+    private static final class Generation {
+        final ConcurrentHashMap<Long, LongAdder> posts = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, LongAdder> topics = new ConcurrentHashMap<>();
+        // Threads currently adding to this generation
+        final LongAdder writers = new LongAdder();
+        // Written to the database; reads no longer add it
+        volatile boolean committed = false;
+
+        ConcurrentHashMap<Long, LongAdder> counts(boolean topic) {
+            return topic ? topics : posts;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache that evicts entries not used recently once
+ * full, and counts its hits and misses.
+ *
+ * Lookups take no lock: a hit only marks its entry as used. Eviction is
+ * the CLOCK approximation of least recently used. Keys wait in insertion
+ * order, and the oldest one is evicted unless it has been used since the
+ * hand last passed it, in which case it gets a second chance. Only a put
+ * that takes the cache past maxSize locks, to run the hand.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LookupCache<K, V> {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    // Every cached key once, oldest first; the head is under the clock hand
+    private final Queue<K> clock = new ConcurrentLinkedQueue<>();
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public LookupCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key
+     * @return The cached value, or null if there is none.
+     */
+    public V get(K key) {
+        // A null key is never cached; ConcurrentHashMap cannot hold it
+        Entry<V> entry = key == null ? null : entries.get(key);
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Only write when it changes, so hot entries stay shared in caches
+        if (!entry.used) {
+            entry.used = true;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        if (key == null) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value);
+        Entry<V> existing = entries.putIfAbsent(key, entry);
+        if (existing != null) {
+            existing.value = value;
+            existing.used = true;
+            return;
+        }
+
+        clock.offer(key);
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * @return the number of entries currently cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maximum number of entries kept
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to go to the database
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            while (entries.size() > maxSize) {
+                K key = clock.poll();
+                if (key == null) {
+                    return;
+                }
+                Entry<V> entry = entries.get(key);
+                if (entry != null && entry.used) {
+                    entry.used = false;
+                    clock.offer(key);
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        volatile V value;
+        // Looked up since the clock hand last passed
+        volatile boolean used = false;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Written by Evan Lalopoulos <evan.lalopoulos.2017@my.bristol.ac.uk>
+ * Copyright (C) 2018 - All rights reserved.
+ * Unauthorized copying of this file is strictly prohibited.
+ */
+
+package uk.ac.bris.cs.databases.cwk3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The SQL statements executed and rows fetched by the current thread, as
+ * counted by a ConnectionPool with query counting on. The counts only ever
+ * grow; take the difference across a call to see what it did.
+ *
+ * Each thread has its own counter, so counting needs no synchronization,
+ * and a counter must only be read by its own thread.
+ *
+ * A counter can also record the SQL and parameters of the prepared
+ * statements its thread executes, to check what an API call really ran.
+ */
+public final class QueryCounter {
+
+    private static final ThreadLocal<QueryCounter> CURRENT = ThreadLocal.withInitial(QueryCounter::new);
+
+    long statements = 0;
+    long rows = 0;
+    // Null unless recording
+    List<Executed> executed = null;
+
+    private QueryCounter() {}
+
+    /**
+     * @return the calling thread's counter.
+     */
+    public static QueryCounter current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return statements executed; a batch counts once.
+     */
+    public long getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return rows read from result sets, generated keys included.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Starts recording the prepared statements this thread executes.
+     */
+    public void startRecording() {
+        executed = new ArrayList<>();
+    }
+
+    /**
+     * Stops recording.
+     * @return the prepared statements executed since startRecording(), in
+     * order; empty if it was not called.
+     */
+    public List<Executed> stopRecording() {
+        List<Executed> e = executed;
+        executed = null;
+        return e == null ? Collections.<Executed>emptyList() : e;
+    }
+
+    /**
+     * A prepared statement as it was executed.
+     */
+    public static final class Executed {
+        private final String sql;
+        private final List<Object> parameters;
+
+        Executed(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        /**
+         * @return the SQL it was prepared with.
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the values of its parameters, in placeholder order.
+         */
+        public List<Object> getParameters() {
+            return parameters;
+        }
+    }
+}
@@ -10,7 +10,9 @@ import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.ResultCursor;
 
 /**
  * Code shared across web handlers.
@@ -77,14 +79,125 @@ public abstract class AbstractHandler extends RouterNanoHTTPD.DefaultHandler {
         
     }
     
+    // Set while this request holds a renderer reserved for streaming its
+    // page; a handler is made for each request
+    private boolean streaming = false;
+    
     /** Implement this to work with cookies. */
     void handleCookies(NanoHTTPD.IHTTPSession session) {}
     
+    /**
+     * Override for pages that can get large. Their templates are rendered
+     * while the response is sent, in chunks, instead of into a String first,
+     * unless every renderer is busy, see TemplateStream.
+     */
+    boolean streamsResponse() { return false; }
+    
+    /**
+     * Override for read-only pages that can be cached, see PageCache.
+     * @return the tags of the data the page shows, or null if the page
+     * is not cached.
+     */
+    String[] cacheTags(Map<String, String> urlParams) { return null; }
+    
+    /**
+     * @return a numeric URL parameter, or null if it is missing or invalid.
+     */
+    static Long idParameter(Map<String, String> urlParams, String name) {
+        try {
+            return Long.valueOf(urlParams.get(name));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
     private NanoHTTPD.Response handle(RouterNanoHTTPD.UriResource uriResource,
                                       Map<String, String> urlParams,
                                       NanoHTTPD.IHTTPSession session) {
-        View v = render(uriResource, urlParams, session);
+        try {
+            return handlePage(uriResource, urlParams, session);
+        } finally {
+            // Not taken by a TemplateStream, as the page was not streamed
+            if (streaming) {
+                streaming = false;
+                TemplateStream.release();
+            }
+        }
+    }
+    
+    private NanoHTTPD.Response handlePage(RouterNanoHTTPD.UriResource uriResource,
+                                          Map<String, String> urlParams,
+                                          NanoHTTPD.IHTTPSession session) {
+        String[] tags = null;
+        if (session.getMethod() == NanoHTTPD.Method.GET) {
+            tags = cacheTags(urlParams);
+        }
+        if (tags == null) {
+            View v = renderPage(uriResource, urlParams, session);
+            handleCookies(session);
+            return respond(v, null, 0);
+        }
+        
+        PageCache cache = ApplicationContext.getInstance().getPageCache();
+        String key = PageCache.key(session);
+        PageCache.Validator validator = cache.validator(key, tags);
+        
+        if (validator.isNotModified(session)) {
+            // No body, so no Content-Type either; Server never gzips a 304
+            return validator.addHeaders(NanoHTTPD.newFixedLengthResponse(
+                   NanoHTTPD.Response.Status.NOT_MODIFIED, null, (String) null));
+        }
+        
+        String page = cache.get(key, validator);
+        if (page != null) {
+            handleCookies(session);
+            return validator.addHeaders(NanoHTTPD.newFixedLengthResponse(
+                   new Status(200), getMimeType(), page));
+        }
+        
+        View v = renderPage(uriResource, urlParams, session);
         handleCookies(session);
+        if (v.getCode() != 200) {
+            return respond(v, null, 0);
+        }
+        NanoHTTPD.Response r = respond(v, p -> cache.put(key, validator, p),
+                                       cache.getMaxPageChars());
+        if (r.getStatus().getRequestStatus() == 200) {
+            validator.addHeaders(r);
+        }
+        return r;
+    }
+    
+    /**
+     * Renders the page, reserving a renderer first if it streams, as the
+     * handler opens its cursor in render().
+     */
+    private View renderPage(RouterNanoHTTPD.UriResource uriResource,
+                            Map<String, String> urlParams,
+                            NanoHTTPD.IHTTPSession session) {
+        streaming = streamsResponse() && TemplateStream.reserve();
+        return render(uriResource, urlParams, session);
+    }
+    
+    /**
+     * Sends a view, streamed or in one piece.
+     * @param rendered given the page once rendered, if not null.
+     * @param maxChars the longest streamed page given to rendered.
+     */
+    private NanoHTTPD.Response respond(View v, Consumer<String> rendered, int maxChars) {
+        if (v.isStreaming()) {
+            // The TemplateStream gives the renderer back
+            streaming = false;
+            try {
+                return TemplateStream.render(v.getTemplate(), v.getModel(), rendered, maxChars)
+                       .respond(new Status(v.getCode()), getMimeType() + "; charset=UTF-8");
+            } catch (IOException e) {
+                closeData(v.getModel().get("data"));
+                v = new View(500, "Rendering error - " + e.getMessage());
+            }
+        } else if (rendered != null) {
+            rendered.accept(v.getContents());
+        }
         NanoHTTPD.Response r = NanoHTTPD.newFixedLengthResponse(
                                new Status(v.getCode()),
                                getMimeType(),
@@ -137,19 +250,40 @@ public abstract class AbstractHandler extends RouterNanoHTTPD.DefaultHandler {
         try {
             t = c.getTemplate(template);
         } catch (Exception e) {
+            closeData(data);
             return new View(500, "Template error - " + e.getMessage());
         }
         
+        if (streaming) {
+            // Closed by the TemplateStream once rendered
+            return new View(200, t, viewdata);
+        }
+        
         StringWriter w = new StringWriter();
         try {
             t.process(viewdata, w);
-        } catch (TemplateException | IOException e) {
+        } catch (TemplateException | IOException | IllegalStateException e) {
             return new View(500, "Rendering error - " + e.getMessage());
+        } finally {
+            closeData(data);
         }
         
         return new View(200, w.toString());
     }
     
+    /**
+     * Closes view data that holds database resources, such as a cursor.
+     */
+    static void closeData(Object data) {
+        if (data instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) data).close();
+            } catch (Exception e) {
+                System.err.println("[AbstractHandler] closing view data failed - " + e.getMessage());
+            }
+        }
+    }
+    
     public static class ListWrapper<T> {
         private final List<T> l;
 
@@ -178,6 +312,36 @@ public abstract class AbstractHandler extends RouterNanoHTTPD.DefaultHandler {
         public List<T> getData() { return l; }
     }
     
+    /**
+     * Like ListWrapper, for a cursor that is read while the page renders.
+     */
+    public static class CursorWrapper<T> implements AutoCloseable {
+        private final ResultCursor<T> c;
+
+        // Result.failure and Result.fatal are raw; neither holds a value to mistype
+        @SuppressWarnings("unchecked")
+        public static <U> Result<CursorWrapper<U>> wrap(Result<ResultCursor<U>> r) {
+            if (r.isSuccess()) {
+                return Result.success(new CursorWrapper<U>(r.getValue()));
+            } else if (r.isFatal()) {
+                return Result.fatal(r.getMessage());
+            } else {
+                return Result.failure(r.getMessage());
+            }
+        }
+        
+        public CursorWrapper(ResultCursor<T> c) {
+            this.c = c;
+        }
+        
+        public ResultCursor<T> getData() { return c; }
+
+        @Override
+        public void close() {
+            c.close();
+        }
+    }
+    
     ListWrapper wrap(List l) {
         return new ListWrapper(l);
     }
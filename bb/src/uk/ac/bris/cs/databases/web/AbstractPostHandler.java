@@ -61,10 +61,6 @@ public abstract class AbstractPostHandler extends AbstractHandler {
             return new View(500, "Exception handling POST - " + e.getMessage());
         }
    
-        System.out.println("[AbstractPostHandler] render " + uriResource.getUri());
-        for (Map.Entry<String,String> e : m.entrySet()) {
-            System.out.println("param " + e.getKey() + " => " + e.getValue());
-        }
         RenderPair rp = handlePost(m, session);
         
         NanoHTTPD.CookieHandler h = session.getCookies();
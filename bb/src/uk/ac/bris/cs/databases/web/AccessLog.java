@@ -0,0 +1,218 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An access log that never holds up a request. Request threads put a
+ * record in a fixed-size ring buffer and carry on; one background thread
+ * formats the records as JSON lines and writes them out. When the buffer
+ * is full, records are dropped and counted rather than waited for.
+ *
+ * Each record has the time, method, path, status, latency in microseconds,
+ * body bytes and logged-in user. Latency and bytes run until the body has
+ * been sent, and bytes are counted before any gzip. Successful requests
+ * are logged at the sample rate; errors (status 400 and up) always are.
+ */
+public class AccessLog implements AutoCloseable {
+
+    private final ArrayBlockingQueue<Entry> buffer;
+    private final double sampleRate;
+    private final Writer out;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param out where the lines go; flushed whenever the buffer empties.
+     * @param bufferSize records that can wait to be written.
+     * @param sampleRate share of successful requests logged, 0 to 1.
+     */
+    public AccessLog(Writer out, int bufferSize, double sampleRate) {
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.sampleRate = sampleRate;
+        this.out = out;
+
+        this.writer = new Thread(this::write, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Arranges for a response to be logged once it has been sent.
+     * @param session the request.
+     * @param r its response.
+     * @param start System.nanoTime() when the request was read.
+     */
+    public void track(NanoHTTPD.IHTTPSession session, NanoHTTPD.Response r, long start) {
+        int status = r.getStatus() == null ? 0 : r.getStatus().getRequestStatus();
+        if (status < 400 && sampleRate < 1
+                && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+
+        Entry entry = new Entry(System.currentTimeMillis(), session.getMethod().toString(),
+                session.getUri(), status, session.getCookies().read("user"), start);
+        InputStream data = r.getData();
+        if (data == null) {
+            add(entry);
+        } else {
+            r.setData(new Counting(data, entry));
+        }
+    }
+
+    /**
+     * @return records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes what is buffered and stops the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(Entry entry) {
+        entry.latencyNanos = System.nanoTime() - entry.start;
+        if (!buffer.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private void write() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            if (buffer.drainTo(batch) == 0) {
+                flushQuietly();
+                if (closed) {
+                    return;
+                }
+                try {
+                    batch.add(buffer.take());
+                } catch (InterruptedException e) {
+                    // Closed: write what is left, then stop
+                    continue;
+                }
+                buffer.drainTo(batch);
+            }
+
+            for (Entry entry : batch) {
+                try {
+                    entry.writeTo(out);
+                } catch (IOException e) {
+                    // Keep going; there is nowhere to report this
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // Nothing more to do on the way out
+        }
+    }
+
+    /**
+     * One request, filled in as its response goes out.
+     */
+    private static final class Entry {
+        final long time;
+        final String method;
+        final String path;
+        final int status;
+        final String user;
+        final long start;
+        long bytes = 0;
+        long latencyNanos;
+
+        Entry(long time, String method, String path, int status, String user, long start) {
+            this.time = time;
+            this.method = method;
+            this.path = path;
+            this.status = status;
+            this.user = user;
+            this.start = start;
+        }
+
+        void writeTo(Writer out) throws IOException {
+            new JsonWriter(out).beginObject()
+                .name("time").value(Instant.ofEpochMilli(time).toString())
+                .name("method").value(method)
+                .name("path").value(path)
+                .name("status").value(status)
+                .name("latencyMicros").value(latencyNanos / 1000)
+                .name("bytes").value(bytes)
+                .name("user").value(user == null || user.equals("") ? null : user)
+                .endObject();
+            out.write('\n');
+        }
+    }
+
+    /**
+     * The response body, counted as it is sent. NanoHTTPD closes it once
+     * the response is done, which logs the entry.
+     */
+    private final class Counting extends FilterInputStream {
+        private final Entry entry;
+        private boolean logged = false;
+
+        Counting(InputStream in, Entry entry) {
+            super(in);
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                entry.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                entry.bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!logged) {
+                    logged = true;
+                    add(entry);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package uk.ac.bris.cs.databases.web;
 
+import fi.iki.elonen.NanoHTTPD;
 import uk.ac.bris.cs.databases.api.APIProvider;
 import uk.ac.bris.cs.databases.api.AdvancedForumView;
 import uk.ac.bris.cs.databases.api.Result;
@@ -10,13 +11,19 @@ import uk.ac.bris.cs.databases.api.Result;
  * 
  * @author csxdb
  */
-public class AdvancedForumHandler extends SimpleHandler {
+public class AdvancedForumHandler extends RPHandler {
+
+    // Topics shown per page; ?after=<cursor> continues after that topic.
+    static final int PAGE_SIZE = 50;
 
     @Override
-    RenderPair simpleRender(String p) throws RenderException {
+    RenderPair doRender(String p,
+                        NanoHTTPD.IHTTPSession session)
+                        throws RenderException {
         long id = Long.parseLong(p);
+        String after = session.getParms().get("after");
         APIProvider api = ApplicationContext.getInstance().getApi();
-        Result<AdvancedForumView> r = api.getAdvancedForum(id);
+        Result<AdvancedForumView> r = api.getAdvancedForum(id, after, PAGE_SIZE);
         return new RenderPair("AdvancedForumView.ftl", r);
     }
 }
@@ -2,6 +2,8 @@ package uk.ac.bris.cs.databases.web;
 
 import freemarker.template.Configuration;
 import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.cwk3.ConnectionPool;
+import uk.ac.bris.cs.databases.cwk3.LikeBatcher;
 
 /**
  *
@@ -14,7 +16,17 @@ public class ApplicationContext {
     
     private APIProvider api;
 
+    private ConnectionPool connectionPool;
+
+    private LikeBatcher likeBatcher;
+
     private Configuration templateConfiguration;
+
+    private BoundedAsyncRunner requestRunner;
+
+    private PageCache pageCache;
+
+    private AccessLog accessLog;
     
    
     public static ApplicationContext getInstance() {
@@ -35,6 +47,34 @@ public class ApplicationContext {
         this.api = api;
     }
 
+    /**
+     * @return the pool the api borrows connections from
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * @param connectionPool the connectionPool to set
+     */
+    public void setConnectionPool(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * @return the like write-behind, or null if likes are written directly
+     */
+    public LikeBatcher getLikeBatcher() {
+        return likeBatcher;
+    }
+
+    /**
+     * @param likeBatcher the likeBatcher to set
+     */
+    public void setLikeBatcher(LikeBatcher likeBatcher) {
+        this.likeBatcher = likeBatcher;
+    }
+
     /**
      * @return the templateConfiguration
      */
@@ -48,4 +88,46 @@ public class ApplicationContext {
     public void setTemplateConfiguration(Configuration templateConfiguration) {
         this.templateConfiguration = templateConfiguration;
     }
+
+    /**
+     * @return the runner serving client connections
+     */
+    public BoundedAsyncRunner getRequestRunner() {
+        return requestRunner;
+    }
+
+    /**
+     * @param requestRunner the requestRunner to set
+     */
+    public void setRequestRunner(BoundedAsyncRunner requestRunner) {
+        this.requestRunner = requestRunner;
+    }
+
+    /**
+     * @return the cache of rendered pages
+     */
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * @param pageCache the pageCache to set
+     */
+    public void setPageCache(PageCache pageCache) {
+        this.pageCache = pageCache;
+    }
+
+    /**
+     * @return the access log, or null if requests are not logged
+     */
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    /**
+     * @param accessLog the accessLog to set
+     */
+    public void setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
 }
@@ -0,0 +1,115 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs client connections on a fixed number of worker threads instead of
+ * NanoHTTPD's default of one new thread per connection.
+ *
+ * Connections beyond the workers wait in a bounded queue. Once that is full
+ * as well, new connections are closed straight away and counted as
+ * rejected, so a flood of clients cannot run the server out of threads.
+ *
+ * A worker stays with its connection while it is kept alive. Server cuts
+ * the wait for the next request short and closes kept-alive connections
+ * while others are queued, see KeepAliveStream.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+
+    private final ThreadPoolExecutor executor;
+    private final int queueSize;
+
+    // Connections queued or running, so closeAll() can reach them
+    private final Set<NanoHTTPD.ClientHandler> open = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param threads the number of worker threads.
+     * @param queueSize the number of connections that can wait for a worker.
+     */
+    public BoundedAsyncRunner(int threads, int queueSize) {
+        this.queueSize = queueSize;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "request-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // Idle workers are let go rather than kept around forever
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler code) {
+        open.add(code);
+        try {
+            executor.execute(code);
+        } catch (RejectedExecutionException e) {
+            open.remove(code);
+            rejected.increment();
+            code.close();
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        open.remove(clientHandler);
+    }
+
+    @Override
+    public void closeAll() {
+        List<NanoHTTPD.ClientHandler> handlers = new ArrayList<>(open);
+        for (NanoHTTPD.ClientHandler handler : handlers) {
+            handler.close();
+        }
+    }
+
+    /**
+     * @return the number of workers currently serving a connection.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of connections waiting for a worker.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of worker threads.
+     */
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of connections that can wait for a worker.
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return the number of connections closed because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
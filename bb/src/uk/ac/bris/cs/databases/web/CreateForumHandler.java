@@ -27,6 +27,7 @@ public class CreateForumHandler extends AbstractPostHandler {
         Result r = api.createForum(title);
         
         if (r.isSuccess()) {
+            ApplicationContext.getInstance().getPageCache().invalidate(PageCache.FORUMS);
             return new RenderPair("Success.ftl",
                 Result.success(new ValueHolder("Created new forum.")));
         } else {
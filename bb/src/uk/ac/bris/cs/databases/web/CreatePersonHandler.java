@@ -32,6 +32,7 @@ public class CreatePersonHandler extends AbstractPostHandler {
         Result r = api.addNewPerson(name, username, sid.equals("") ? null : sid);
         
         if (r.isSuccess()) {
+            ApplicationContext.getInstance().getPageCache().invalidate(PageCache.PEOPLE);
             return new RenderPair("Success.ftl",
                 Result.success(new ValueHolder("Created new person.")));
         } else {
@@ -39,6 +39,7 @@ public class CreatePostHandler extends AbstractPostHandler {
             return new RenderPair(null, Result.failure(
                 "Failed to create post - " + r.getMessage()));
         }
+        ApplicationContext.getInstance().getPageCache().invalidate(PageCache.FORUMS, PageCache.topic(topicId));
 
         return new RenderPair("Success.ftl",
             Result.success(new ValueHolder("Created a new post.")));
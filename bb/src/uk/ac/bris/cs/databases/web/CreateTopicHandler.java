@@ -44,6 +44,7 @@ public class CreateTopicHandler extends AbstractPostHandler {
             return new RenderPair(null, Result.failure(
                 "Failed to create topic - " + r.getMessage()));
         }
+        ApplicationContext.getInstance().getPageCache().invalidate(PageCache.FORUMS, PageCache.forum(forumId));
 
         return new RenderPair("Success.ftl",
             Result.success(new ValueHolder("Created a new topic.")));
@@ -1,7 +1,8 @@
 package uk.ac.bris.cs.databases.web;
 
+import java.util.Map;
 import uk.ac.bris.cs.databases.api.APIProvider;
-import uk.ac.bris.cs.databases.api.ForumView;
+import uk.ac.bris.cs.databases.api.ForumStreamView;
 import uk.ac.bris.cs.databases.api.Result;
 
 /**
@@ -16,8 +17,16 @@ public class ForumHandler extends SimpleHandler {
     RenderPair simpleRender(String p) throws RenderException {
         long id = Long.parseLong(p);
         APIProvider api = ApplicationContext.getInstance().getApi();
-        Result<ForumView> r = api.getForum(id);
+        Result<ForumStreamView> r = api.streamForum(id);
         return new RenderPair("ForumView.ftl", r);
     }
-    
+
+    @Override
+    boolean streamsResponse() { return true; }
+
+    @Override
+    String[] cacheTags(Map<String, String> urlParams) {
+        Long id = idParameter(urlParams, "id");
+        return id == null ? null : new String[] { PageCache.forum(id) };
+    }
 }
@@ -1,6 +1,7 @@
 package uk.ac.bris.cs.databases.web;
 
 import java.util.List;
+import java.util.Map;
 import uk.ac.bris.cs.databases.api.APIProvider;
 import uk.ac.bris.cs.databases.api.ForumSummaryView;
 import uk.ac.bris.cs.databases.api.Result;
@@ -21,4 +22,9 @@ public class ForumsHandler extends SimpleHandler {
     }
 
     @Override boolean needsParameter() { return false; }
+
+    @Override
+    String[] cacheTags(Map<String, String> urlParams) {
+        return new String[] { PageCache.FORUMS };
+    }
 }
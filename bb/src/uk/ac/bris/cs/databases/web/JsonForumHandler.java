@@ -0,0 +1,53 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.io.IOException;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.ForumStreamView;
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.SimpleTopicSummaryView;
+
+/**
+ * A forum and all its topics, as JSON. The topics are streamed.
+ * path: /api/v1/forum/:id
+ */
+public class JsonForumHandler extends JsonHandler {
+
+    @Override
+    Result<Body> body(Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
+        Long id = idParameter(urlParams, "id");
+        if (id == null) {
+            return failure("Missing or invalid parameter id.");
+        }
+
+        APIProvider api = ApplicationContext.getInstance().getApi();
+        Result<ForumStreamView> r = api.streamForum(id);
+        if (!r.isSuccess()) {
+            return failed(r);
+        }
+
+        ForumStreamView forum = r.getValue();
+        return Result.success(new Body() {
+            @Override
+            public void write(JsonWriter w) throws IOException {
+                w.beginObject()
+                 .name("id").value(forum.getId())
+                 .name("title").value(forum.getTitle())
+                 .name("topics").beginArray();
+                while (forum.getTopics().hasNext()) {
+                    JsonViews.simpleTopicSummary(w, forum.getTopics().next());
+                }
+                w.endArray().endObject();
+            }
+
+            @Override
+            public void close() {
+                forum.close();
+            }
+        });
+    }
+
+    @Override
+    boolean streamsResponse() { return true; }
+}
@@ -0,0 +1,33 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.util.List;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.ForumSummaryView;
+import uk.ac.bris.cs.databases.api.Result;
+
+/**
+ * The forums with their last topic, as JSON.
+ * path: /api/v1/forums
+ */
+public class JsonForumsHandler extends JsonHandler {
+
+    @Override
+    Result<Body> body(Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
+        APIProvider api = ApplicationContext.getInstance().getApi();
+        Result<List<ForumSummaryView>> r = api.getForums();
+        if (!r.isSuccess()) {
+            return failed(r);
+        }
+
+        List<ForumSummaryView> forums = r.getValue();
+        return Result.success(w -> {
+            w.beginArray();
+            for (ForumSummaryView f : forums) {
+                JsonViews.forumSummary(w, f);
+            }
+            w.endArray();
+        });
+    }
+}
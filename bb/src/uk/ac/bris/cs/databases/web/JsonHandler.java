@@ -0,0 +1,159 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.router.RouterNanoHTTPD;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.Result;
+
+/**
+ * Base class for the JSON API under /api/v1. Handlers hand back a body
+ * that writes their view with a JsonWriter; no template is involved.
+ * Errors are sent as {"error": message} with the same status codes as
+ * the HTML pages: 400 for failures, 500 for fatal errors.
+ */
+public abstract class JsonHandler extends RouterNanoHTTPD.DefaultHandler {
+
+    static final String MIME_TYPE = "application/json";
+
+    /**
+     * Writes a view as JSON. Bodies reading from a cursor close it.
+     */
+    interface Body extends AutoCloseable {
+        void write(JsonWriter w) throws IOException;
+
+        @Override
+        default void close() {}
+    }
+
+    /**
+     * @return the body for a GET request, or the failure to report.
+     */
+    abstract Result<Body> body(Map<String, String> urlParams,
+                               NanoHTTPD.IHTTPSession session);
+
+    /**
+     * Override for bodies that can get large. They are written while the
+     * response is sent, in chunks, instead of into a String first, unless
+     * every renderer is busy, see TemplateStream.
+     */
+    boolean streamsResponse() { return false; }
+
+    @Override public String getMimeType() {
+        return MIME_TYPE;
+    }
+
+    @Override public NanoHTTPD.Response.IStatus getStatus() {
+        throw new RuntimeException("Should not happen.");
+    }
+
+    @Override
+    public String getText() {
+        throw new RuntimeException("Should not happen - using get");
+    }
+
+    @Override
+    public NanoHTTPD.Response get(RouterNanoHTTPD.UriResource uriResource,
+                                  Map<String, String> urlParams,
+                                  NanoHTTPD.IHTTPSession session) {
+
+        // Reserved before body() opens its cursor
+        boolean streaming = streamsResponse() && TemplateStream.reserve();
+        try {
+            return respond(urlParams, session, streaming);
+        } catch (RuntimeException e) {
+            if (streaming) {
+                TemplateStream.release();
+            }
+            throw e;
+        }
+    }
+
+    private NanoHTTPD.Response respond(Map<String, String> urlParams,
+                                       NanoHTTPD.IHTTPSession session,
+                                       boolean streaming) {
+        Result<Body> r = body(urlParams, session);
+        if (!r.isSuccess()) {
+            if (streaming) {
+                TemplateStream.release();
+            }
+            return error(r.isFatal() ? NanoHTTPD.Response.Status.INTERNAL_ERROR
+                                     : NanoHTTPD.Response.Status.BAD_REQUEST,
+                         r.getMessage());
+        }
+
+        Body body = r.getValue();
+        if (streaming) {
+            // The TemplateStream gives the renderer back, even if this throws
+            try {
+                return TemplateStream.write(session.getUri(),
+                                            w -> body.write(new JsonWriter(w)), body)
+                    .respond(NanoHTTPD.Response.Status.OK, MIME_TYPE + "; charset=UTF-8");
+            } catch (IOException e) {
+                body.close();
+                return error(NanoHTTPD.Response.Status.INTERNAL_ERROR,
+                             "Writing error - " + e.getMessage());
+            }
+        }
+
+        StringWriter w = new StringWriter();
+        try {
+            body.write(new JsonWriter(w));
+        } catch (IOException | IllegalStateException e) {
+            return error(NanoHTTPD.Response.Status.INTERNAL_ERROR,
+                         "Writing error - " + e.getMessage());
+        } finally {
+            body.close();
+        }
+        return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK,
+            MIME_TYPE + "; charset=UTF-8", w.toString());
+    }
+
+    @Override
+    public NanoHTTPD.Response post(RouterNanoHTTPD.UriResource uriResource,
+                                   Map<String, String> urlParams,
+                                   NanoHTTPD.IHTTPSession session) {
+        return error(NanoHTTPD.Response.Status.BAD_REQUEST,
+                     "Error - expected GET request, got POST");
+    }
+
+    /**
+     * @return a failure for body() to report.
+     */
+    static Result<Body> failure(String message) {
+        return failed(false, message);
+    }
+
+    /**
+     * @return the failure or fatal error of an API call for body() to report.
+     */
+    static Result<Body> failed(Result<?> r) {
+        return failed(r.isFatal(), r.getMessage());
+    }
+
+    // Result.failure and Result.fatal are raw; neither holds a value to mistype
+    @SuppressWarnings("unchecked")
+    private static Result<Body> failed(boolean fatal, String message) {
+        return fatal ? Result.fatal(message) : Result.failure(message);
+    }
+
+    /**
+     * @return a numeric URL parameter, or null if it is missing or invalid.
+     */
+    static Long idParameter(Map<String, String> urlParams, String name) {
+        return AbstractHandler.idParameter(urlParams, name);
+    }
+
+    private static NanoHTTPD.Response error(NanoHTTPD.Response.Status status,
+                                            String message) {
+        StringWriter w = new StringWriter();
+        try {
+            new JsonWriter(w).beginObject().name("error").value(message).endObject();
+        } catch (IOException e) {
+            // Cannot happen writing to memory
+        }
+        return NanoHTTPD.newFixedLengthResponse(status,
+            MIME_TYPE + "; charset=UTF-8", w.toString());
+    }
+}
@@ -0,0 +1,45 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.io.IOException;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.PersonView;
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.ResultCursor;
+
+/**
+ * Everyone, as JSON. The list is streamed.
+ * path: /api/v1/people
+ */
+public class JsonPeopleHandler extends JsonHandler {
+
+    @Override
+    Result<Body> body(Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
+        APIProvider api = ApplicationContext.getInstance().getApi();
+        Result<ResultCursor<PersonView>> r = api.streamUsers();
+        if (!r.isSuccess()) {
+            return failed(r);
+        }
+
+        ResultCursor<PersonView> people = r.getValue();
+        return Result.success(new Body() {
+            @Override
+            public void write(JsonWriter w) throws IOException {
+                w.beginArray();
+                while (people.hasNext()) {
+                    JsonViews.person(w, people.next());
+                }
+                w.endArray();
+            }
+
+            @Override
+            public void close() {
+                people.close();
+            }
+        });
+    }
+
+    @Override
+    boolean streamsResponse() { return true; }
+}
@@ -0,0 +1,31 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.PersonView;
+import uk.ac.bris.cs.databases.api.Result;
+
+/**
+ * One person, as JSON.
+ * path: /api/v1/person/:id
+ */
+public class JsonPersonHandler extends JsonHandler {
+
+    @Override
+    Result<Body> body(Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
+        String username = urlParams.get("id");
+        if (username == null || username.equals("")) {
+            return failure("Missing parameter id.");
+        }
+
+        APIProvider api = ApplicationContext.getInstance().getApi();
+        Result<PersonView> r = api.getPersonView(username);
+        if (!r.isSuccess()) {
+            return failed(r);
+        }
+
+        PersonView person = r.getValue();
+        return Result.success(w -> JsonViews.person(w, person));
+    }
+}
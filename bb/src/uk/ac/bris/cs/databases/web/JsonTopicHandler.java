@@ -0,0 +1,44 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.TopicView;
+
+/**
+ * A page of a topic's posts, as JSON.
+ * path: /api/v1/topic/:id[?after=<post number>]
+ */
+public class JsonTopicHandler extends JsonHandler {
+
+    @Override
+    Result<Body> body(Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
+        Long id = idParameter(urlParams, "id");
+        if (id == null) {
+            return failure("Missing or invalid parameter id.");
+        }
+
+        long after = 0;
+        String value = session.getParms().get("after");
+        if (value != null && !value.equals("")) {
+            try {
+                after = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                after = -1;
+            }
+            if (after < 0) {
+                return failure("Invalid parameter after.");
+            }
+        }
+
+        APIProvider api = ApplicationContext.getInstance().getApi();
+        Result<TopicView> r = api.getTopic(id, after, TopicHandler.PAGE_SIZE);
+        if (!r.isSuccess()) {
+            return failed(r);
+        }
+
+        TopicView topic = r.getValue();
+        return Result.success(w -> JsonViews.topic(w, topic));
+    }
+}
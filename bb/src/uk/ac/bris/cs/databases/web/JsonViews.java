@@ -0,0 +1,72 @@
+package uk.ac.bris.cs.databases.web;
+
+import java.io.IOException;
+import uk.ac.bris.cs.databases.api.ForumSummaryView;
+import uk.ac.bris.cs.databases.api.PersonView;
+import uk.ac.bris.cs.databases.api.PostView;
+import uk.ac.bris.cs.databases.api.SimpleTopicSummaryView;
+import uk.ac.bris.cs.databases.api.TopicView;
+
+/**
+ * JSON forms of the API views. Member names follow the views' getters,
+ * as the templates do.
+ */
+final class JsonViews {
+
+    private JsonViews() {}
+
+    static void person(JsonWriter w, PersonView p) throws IOException {
+        w.beginObject()
+         .name("name").value(p.getName())
+         .name("username").value(p.getUsername())
+         .name("studentId").value(p.getStudentId())
+         .endObject();
+    }
+
+    static void simpleTopicSummary(JsonWriter w, SimpleTopicSummaryView t) throws IOException {
+        w.beginObject()
+         .name("topicId").value(t.getTopicId())
+         .name("forumId").value(t.getForumId())
+         .name("title").value(t.getTitle())
+         .endObject();
+    }
+
+    static void forumSummary(JsonWriter w, ForumSummaryView f) throws IOException {
+        w.beginObject()
+         .name("id").value(f.getId())
+         .name("title").value(f.getTitle())
+         .name("lastTopic");
+        if (f.getLastTopic() == null) {
+            w.nullValue();
+        } else {
+            simpleTopicSummary(w, f.getLastTopic());
+        }
+        w.endObject();
+    }
+
+    static void post(JsonWriter w, PostView p) throws IOException {
+        w.beginObject()
+         .name("postNumber").value(p.getPostNumber())
+         .name("authorName").value(p.getAuthorName())
+         .name("authorUserName").value(p.getAuthorUserName())
+         .name("text").value(p.getText())
+         .name("postedAt").value(p.getPostedAt())
+         .name("likes").value(p.getLikes())
+         .endObject();
+    }
+
+    static void topic(JsonWriter w, TopicView t) throws IOException {
+        w.beginObject()
+         .name("topicId").value(t.getTopicId())
+         .name("forumId").value(t.getForumId())
+         .name("forumName").value(t.getForumName())
+         .name("title").value(t.getTitle())
+         .name("posts").beginArray();
+        for (PostView p : t.getPosts()) {
+            post(w, p);
+        }
+        w.endArray()
+         .name("nextAfter").value(t.getNextAfter())
+         .endObject();
+    }
+}
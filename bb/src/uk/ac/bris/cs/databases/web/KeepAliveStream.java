@@ -0,0 +1,88 @@
+package uk.ac.bris.cs.databases.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * The input of a client connection, which waits a shorter time for the
+ * next request on a kept-alive connection than for the rest of a request.
+ *
+ * NanoHTTPD keeps a request worker on a connection for as long as it is
+ * kept alive, waiting up to the socket read timeout for each request. An
+ * idle browser therefore holds a worker that queued connections need. The
+ * wait before a request's first bytes (and before the first request) is
+ * cut to keepAliveMillis; the connection is then closed quietly, and the
+ * browser opens a new one for its next request.
+ */
+class KeepAliveStream extends FilterInputStream {
+
+    // The stream of the connection this worker thread is serving
+    private static final ThreadLocal<KeepAliveStream> CURRENT = new ThreadLocal<>();
+
+    private final Socket socket;
+    private final int keepAliveMillis;
+    // Only touched by the worker serving the connection
+    private boolean betweenRequests = true;
+
+    /**
+     * @param socket the client connection.
+     * @param in its input.
+     * @param keepAliveMillis the longest wait for a request to start.
+     */
+    KeepAliveStream(Socket socket, InputStream in, int keepAliveMillis) {
+        super(in);
+        this.socket = socket;
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * Marks the request being served on this thread as read, so that the
+     * next read waits for a new request. Call once the request is served.
+     */
+    static void requestServed() {
+        KeepAliveStream s = CURRENT.get();
+        if (s != null) {
+            s.betweenRequests = true;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!startRead()) {
+            return super.read();
+        }
+        int readTimeout = socket.getSoTimeout();
+        socket.setSoTimeout(keepAliveMillis);
+        try {
+            return super.read();
+        } finally {
+            socket.setSoTimeout(readTimeout);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (!startRead()) {
+            return super.read(b, off, len);
+        }
+        int readTimeout = socket.getSoTimeout();
+        socket.setSoTimeout(keepAliveMillis);
+        try {
+            return super.read(b, off, len);
+        } finally {
+            socket.setSoTimeout(readTimeout);
+        }
+    }
+
+    /**
+     * @return whether this read waits for a new request.
+     */
+    private boolean startRead() {
+        CURRENT.set(this);
+        boolean waiting = betweenRequests;
+        betweenRequests = false;
+        return waiting;
+    }
+}
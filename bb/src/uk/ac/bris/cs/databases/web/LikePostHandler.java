@@ -17,9 +17,6 @@ public class LikePostHandler extends AbstractHandler {
                        Map<String,String> params,
                        NanoHTTPD.IHTTPSession session) {
         
-        System.out.println("[LikePostHandler] render " + session.getUri());
-        
-        
         String topic = params.get("topic");
         String post = params.get("number");
         String like = params.get("like");
@@ -41,11 +38,12 @@ public class LikePostHandler extends AbstractHandler {
         }
         
         APIProvider api = ApplicationContext.getInstance().getApi();
-        System.out.println("LikePost(" + user + ", " + topicId + ", " +
-                           postNumber + ", " + isLike + ")");
         Result r = api.likePost(user, topicId, postNumber, isLike);
         
         if (r.isSuccess()) {
+            // Likes written behind change the page only once their batch
+            // commits, and LikeBatcher invalidates it again then
+            ApplicationContext.getInstance().getPageCache().invalidate(PageCache.topic(topicId));
             return renderView("Success.ftl", new ValueHolder("Success."), user);
         } else if (r.isFatal()) {
             return new View(500, "Fatal error - " + r.getMessage());
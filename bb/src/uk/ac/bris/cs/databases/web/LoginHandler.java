@@ -4,6 +4,7 @@ import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.router.RouterNanoHTTPD;
 import java.util.Map;
 import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.api.PersonView;
 import uk.ac.bris.cs.databases.api.Result;
 
 /**
@@ -19,8 +20,6 @@ public class LoginHandler extends AbstractHandler {
                        Map<String,String> params,
                        NanoHTTPD.IHTTPSession session) {
         
-        System.out.println("[LoginHandler] render " + session.getUri());
-        
         String id = params.get("id");
         String template;
         Result data;
@@ -31,21 +30,18 @@ public class LoginHandler extends AbstractHandler {
             data = Result.success(new ValueHolder("Logged out."));
         } else {
             APIProvider api = ApplicationContext.getInstance().getApi();
-            Result<Map<String, String>> r = api.getUsers();
-            if (!r.isSuccess()) {
+            // Look up just this user rather than listing all of them
+            Result<PersonView> r = api.getPersonView(id);
+            if (r.isFatal()) {
                 template = null;
                 data = Result.fatal("API call failed.");
+            } else if (!r.isSuccess()) {
+                template = null;
+                data = Result.failure("No such user");
             } else {
-                Map<String, String> users = r.getValue();
-                String name = users.get(id);
-                if (name == null) {
-                    template = null;
-                    data = Result.failure("No such user");
-                } else {
-                    username = id;
-                    template = "Success.ftl";
-                    data = Result.success(new ValueHolder("Logged in as " + name));
-                }
+                username = id;
+                template = "Success.ftl";
+                data = Result.success(new ValueHolder("Logged in as " + r.getValue().getName()));
             }
         }
 
@@ -57,7 +53,6 @@ public class LoginHandler extends AbstractHandler {
         }
 
         if (data.isSuccess()) {
-            System.out.println("[SimpleHandler] rendering " + template);
             return renderView(template, data.getValue(),
                 username.equals("") ? null : username);
         } else if (data.isFatal()) {
@@ -0,0 +1,178 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.router.RouterNanoHTTPD;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.ac.bris.cs.databases.api.APIProvider;
+import uk.ac.bris.cs.databases.cwk3.API;
+import uk.ac.bris.cs.databases.cwk3.ConnectionPool;
+import uk.ac.bris.cs.databases.cwk3.InstrumentedAPI;
+import uk.ac.bris.cs.databases.cwk3.LikeBatcher;
+import uk.ac.bris.cs.databases.cwk3.LookupCache;
+import uk.ac.bris.cs.databases.util.LatencyHistogram;
+
+/**
+ * Serves /metrics in the Prometheus text format: API calls, latencies,
+ * statements and rows per method when the API is instrumented, and the
+ * state of the connection pool, request workers and caches. Latencies are
+ * histograms since the server started, so rates and quantiles can be
+ * worked out over any window in Prometheus.
+ */
+public class MetricsHandler extends RouterNanoHTTPD.DefaultHandler {
+
+    private static final String MIME_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Upper bounds of the latency buckets, in seconds
+    private static final double[] BUCKETS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    @Override public String getMimeType() {
+        return MIME_TYPE;
+    }
+
+    @Override public NanoHTTPD.Response.IStatus getStatus() {
+        return NanoHTTPD.Response.Status.OK;
+    }
+
+    @Override
+    public String getText() {
+        throw new RuntimeException("Should not happen - using get");
+    }
+
+    @Override
+    public NanoHTTPD.Response get(RouterNanoHTTPD.UriResource uriResource,
+                                  Map<String, String> urlParams,
+                                  NanoHTTPD.IHTTPSession session) {
+        ApplicationContext c = ApplicationContext.getInstance();
+        StringBuilder sb = new StringBuilder();
+
+        APIProvider api = c.getApi();
+        if (api instanceof InstrumentedAPI) {
+            writeApi(sb, (InstrumentedAPI) api);
+            api = ((InstrumentedAPI) api).getApi();
+        }
+
+        ConnectionPool pool = c.getConnectionPool();
+        if (pool != null) {
+            header(sb, "bb_pool_connections", "gauge", "Database connections by state.");
+            sample(sb, "bb_pool_connections{state=\"active\"}", pool.getActiveCount());
+            sample(sb, "bb_pool_connections{state=\"idle\"}", pool.getIdleCount());
+            header(sb, "bb_pool_max_connections", "gauge", "Most database connections open at once.");
+            sample(sb, "bb_pool_max_connections", pool.getMaxSize());
+        }
+
+        LikeBatcher likes = c.getLikeBatcher();
+        if (likes != null) {
+            header(sb, "bb_likes_failed_batches_total", "counter", "Like batches that failed and were written one like at a time.");
+            sample(sb, "bb_likes_failed_batches_total", likes.getFailedBatchCount());
+            header(sb, "bb_likes_lost_total", "counter", "Queued likes never written, as they failed on their own too.");
+            sample(sb, "bb_likes_lost_total", likes.getLostCount());
+        }
+
+        BoundedAsyncRunner runner = c.getRequestRunner();
+        if (runner != null) {
+            header(sb, "bb_http_workers_active", "gauge", "Workers serving a connection.");
+            sample(sb, "bb_http_workers_active", runner.getActiveCount());
+            header(sb, "bb_http_workers_max", "gauge", "Worker threads.");
+            sample(sb, "bb_http_workers_max", runner.getMaxThreads());
+            header(sb, "bb_http_queued", "gauge", "Connections waiting for a worker.");
+            sample(sb, "bb_http_queued", runner.getQueuedCount());
+            header(sb, "bb_http_rejected_total", "counter", "Connections closed because the queue was full.");
+            sample(sb, "bb_http_rejected_total", runner.getRejectedCount());
+        }
+
+        PageCache pages = c.getPageCache();
+        if (pages != null) {
+            header(sb, "bb_page_cache_entries", "gauge", "Rendered pages cached.");
+            sample(sb, "bb_page_cache_entries", pages.size());
+            header(sb, "bb_page_cache_requests_total", "counter", "Cacheable page requests by outcome.");
+            sample(sb, "bb_page_cache_requests_total{outcome=\"hit\"}", pages.getHits());
+            sample(sb, "bb_page_cache_requests_total{outcome=\"miss\"}", pages.getMisses());
+            sample(sb, "bb_page_cache_requests_total{outcome=\"not_modified\"}", pages.getNotModified());
+        }
+
+        AccessLog log = c.getAccessLog();
+        if (log != null) {
+            header(sb, "bb_access_log_dropped_total", "counter", "Access log records dropped with the buffer full.");
+            sample(sb, "bb_access_log_dropped_total", log.getDroppedCount());
+        }
+
+        if (api instanceof API) {
+            writeLookupCaches(sb, (API) api);
+        }
+
+        return NanoHTTPD.newFixedLengthResponse(getStatus(), getMimeType(), sb.toString());
+    }
+
+    private static void writeLookupCaches(StringBuilder sb, API api) {
+        Map<String, LookupCache<?, ?>> caches = new LinkedHashMap<>();
+        caches.put("topic", api.getTopicCache());
+        caches.put("forum", api.getForumCache());
+        caches.put("person", api.getPersonCache());
+
+        header(sb, "bb_lookup_cache_entries", "gauge", "Entries in the API's lookup caches.");
+        for (Map.Entry<String, LookupCache<?, ?>> e : caches.entrySet()) {
+            sample(sb, "bb_lookup_cache_entries{cache=\"" + e.getKey() + "\"}", e.getValue().size());
+        }
+        header(sb, "bb_lookup_cache_requests_total", "counter", "Lookup cache requests by outcome.");
+        for (Map.Entry<String, LookupCache<?, ?>> e : caches.entrySet()) {
+            String cache = "bb_lookup_cache_requests_total{cache=\"" + e.getKey() + "\",outcome=";
+            sample(sb, cache + "\"hit\"}", e.getValue().getHits());
+            sample(sb, cache + "\"miss\"}", e.getValue().getMisses());
+        }
+    }
+
+    private static void writeApi(StringBuilder sb, InstrumentedAPI api) {
+        header(sb, "bb_api_calls_total", "counter", "API calls by method and outcome.");
+        for (InstrumentedAPI.MethodStats m : api.getMethods()) {
+            long failures = m.getFailures();
+            long fatal = m.getFatalErrors();
+            long success = Math.max(m.getLatency().getCount() - failures - fatal, 0);
+            String calls = "bb_api_calls_total{method=\"" + m.getName() + "\",outcome=";
+            sample(sb, calls + "\"success\"}", success);
+            sample(sb, calls + "\"failure\"}", failures);
+            sample(sb, calls + "\"fatal\"}", fatal);
+        }
+
+        header(sb, "bb_api_latency_seconds", "histogram", "API call latency by method.");
+        for (InstrumentedAPI.MethodStats m : api.getMethods()) {
+            LatencyHistogram h = m.getLatency();
+            String method = "method=\"" + m.getName() + "\"";
+            for (double le : BUCKETS) {
+                sample(sb, "bb_api_latency_seconds_bucket{" + method + ",le=\"" + format(le) + "\"}",
+                       h.getCountAtOrBelow((long) (le * 1e9)));
+            }
+            long count = h.getCount();
+            sample(sb, "bb_api_latency_seconds_bucket{" + method + ",le=\"+Inf\"}", count);
+            sb.append("bb_api_latency_seconds_sum{").append(method).append("} ")
+              .append(format(h.getSum() / 1e9)).append('\n');
+            sample(sb, "bb_api_latency_seconds_count{" + method + "}", count);
+        }
+
+        header(sb, "bb_api_statements_total", "counter", "SQL statements executed by method.");
+        for (InstrumentedAPI.MethodStats m : api.getMethods()) {
+            sample(sb, "bb_api_statements_total{method=\"" + m.getName() + "\"}", m.getStatements());
+        }
+
+        header(sb, "bb_api_rows_total", "counter", "Rows fetched by method.");
+        for (InstrumentedAPI.MethodStats m : api.getMethods()) {
+            sample(sb, "bb_api_rows_total{method=\"" + m.getName() + "\"}", m.getRows());
+        }
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String series, long value) {
+        sb.append(series).append(' ').append(value).append('\n');
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
@@ -0,0 +1,340 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of rendered pages for the read-only routes, with the validators
+ * browsers need to revalidate them (ETag, Last-Modified and 304s).
+ *
+ * Each cached page depends on one or more tags, e.g. "topic:12". A handler
+ * that writes calls invalidate() with the tags of the pages it changes,
+ * which moves those tags to a new version. A page's version is the highest
+ * version of its tags, so it changes with any of them, and cached pages or
+ * ETags of an older version are never served again.
+ *
+ * Only the most recently changed tags keep a version of their own, four
+ * per page kept (at least 1024). When there are more, the older half is
+ * dropped, and every tag without a version takes the highest version
+ * dropped. Pages depending only on those tags are rendered once more; none
+ * goes back to an older version, so no stale page or ETag becomes current.
+ *
+ * Pages are keyed by URI, query string and logged-in user, as the header
+ * of every page shows who is logged in.
+ *
+ * Which writes change which pages:
+ * <pre>
+ *   createforum      forums
+ *   createtopic      forums, forum:id
+ *   createpost       forums, topic:id
+ *   likePost         topic:id, and again once committed if written behind
+ *   createperson     people
+ * </pre>
+ * Topic likes are not shown on any cached page, so they invalidate nothing.
+ */
+public class PageCache {
+
+    /** Tag of the forum list. */
+    public static final String FORUMS = "forums";
+    /** Tag of the list of people. */
+    public static final String PEOPLE = "people";
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final int maxSize;
+    private final int maxPageChars;
+    private final LinkedHashMap<String, Page> entries;
+
+    // Versions come from one clock, starting at the startup time so that
+    // ETags handed out before a restart are not mistaken for current ones
+    private final AtomicLong clock;
+    private final ConcurrentHashMap<String, Stamp> tags = new ConcurrentHashMap<>();
+    private final int maxTags;
+    // The version of every tag not in tags
+    private volatile Stamp untracked;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    /**
+     * @param maxSize the number of pages kept, 0 to only answer
+     * conditional requests.
+     * @param maxPageChars pages longer than this are not kept.
+     */
+    public PageCache(final int maxSize, int maxPageChars) {
+        this.maxSize = maxSize;
+        this.maxPageChars = maxPageChars;
+        this.entries = new LinkedHashMap<String, Page>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Page> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        long now = System.currentTimeMillis();
+        this.clock = new AtomicLong(now);
+        this.untracked = new Stamp(now, now);
+        this.maxTags = Math.max(4 * maxSize, 1024);
+    }
+
+    /**
+     * @return the tag of a forum's page.
+     */
+    public static String forum(long forumId) {
+        return "forum:" + forumId;
+    }
+
+    /**
+     * @return the tag of a topic's pages.
+     */
+    public static String topic(long topicId) {
+        return "topic:" + topicId;
+    }
+
+    /**
+     * @return the cache key of the page a request is for.
+     */
+    static String key(NanoHTTPD.IHTTPSession session) {
+        String query = session.getQueryParameterString();
+        String user = session.getCookies().read("user");
+        return session.getUri()
+                + (query == null ? "" : "?" + query)
+                + "\n" + (user == null ? "" : user);
+    }
+
+    /**
+     * Marks every page depending on the given tags as changed. Call once
+     * the write has committed.
+     */
+    public void invalidate(String... pageTags) {
+        long now = System.currentTimeMillis();
+        for (String tag : pageTags) {
+            tags.put(tag, new Stamp(clock.incrementAndGet(), now));
+        }
+        if (tags.size() > maxTags) {
+            dropOldTags();
+        }
+    }
+
+    /**
+     * @return the current validator of a page.
+     */
+    Validator validator(String key, String... pageTags) {
+        Stamp latest = null;
+        for (String tag : pageTags) {
+            Stamp s = tags.get(tag);
+            if (s != null && (latest == null || s.version > latest.version)) {
+                latest = s;
+            }
+        }
+        // Read last: dropOldTags raises it before removing tags, so a tag
+        // found missing above has its version in it by now
+        Stamp u = untracked;
+        if (latest == null || u.version > latest.version) {
+            latest = u;
+        }
+        return new Validator(key, latest);
+    }
+
+    /**
+     * Drops the older half of the tags, moving the untracked version up
+     * to the newest of them first so no page's version goes back.
+     */
+    private synchronized void dropOldTags() {
+        if (tags.size() <= maxTags) {
+            return;
+        }
+        List<Map.Entry<String, Stamp>> oldest = new ArrayList<>(tags.entrySet());
+        oldest.sort((a, b) -> Long.compare(a.getValue().version, b.getValue().version));
+        oldest = oldest.subList(0, oldest.size() / 2);
+
+        Stamp newest = oldest.get(oldest.size() - 1).getValue();
+        if (newest.version > untracked.version) {
+            untracked = newest;
+        }
+        for (Map.Entry<String, Stamp> e : oldest) {
+            // Unless invalidated again meanwhile
+            tags.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * @return the cached page, or null if there is none of this version.
+     */
+    String get(String key, Validator validator) {
+        Page e;
+        synchronized (entries) {
+            e = entries.get(key);
+        }
+
+        if (e == null || e.version != validator.version) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.page;
+    }
+
+    /**
+     * Keeps a page rendered at the given version, unless it is too long.
+     */
+    void put(String key, Validator validator, String page) {
+        if (maxSize == 0 || page.length() > maxPageChars) {
+            return;
+        }
+        synchronized (entries) {
+            Page e = entries.get(key);
+            // A slow render must not replace a newer page
+            if (e == null || e.version < validator.version) {
+                entries.put(key, new Page(validator.version, page));
+            }
+        }
+    }
+
+    /**
+     * @return pages longer than this many characters are not kept.
+     */
+    int getMaxPageChars() {
+        return maxPageChars;
+    }
+
+    /**
+     * @return the number of pages currently cached
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the maximum number of pages kept
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of pages served from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of pages that had to be rendered
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of requests answered with 304 Not Modified
+     */
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    /**
+     * The version of a page as seen by a browser: its ETag and
+     * Last-Modified time.
+     */
+    class Validator {
+        private final long version;
+        private final String etag;
+        private final long lastModified;
+
+        private Validator(String key, Stamp stamp) {
+            this.version = stamp.version;
+            // The key's hash tells apart the same page seen by different users
+            this.etag = "\"" + Integer.toHexString(key.hashCode())
+                    + "-" + Long.toHexString(stamp.version) + "\"";
+            this.lastModified = stamp.time / 1000 * 1000;
+        }
+
+        /**
+         * @return whether the browser's copy is still current.
+         */
+        boolean isNotModified(NanoHTTPD.IHTTPSession session) {
+            Map<String, String> headers = session.getHeaders();
+
+            String ifNoneMatch = headers.get("if-none-match");
+            if (ifNoneMatch != null) {
+                for (String tag : ifNoneMatch.split(",")) {
+                    tag = tag.trim();
+                    if (tag.startsWith("W/")) {
+                        tag = tag.substring(2);
+                    }
+                    if (tag.equals(etag) || tag.equals("*")) {
+                        notModified.increment();
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            String ifModifiedSince = headers.get("if-modified-since");
+            if (ifModifiedSince != null) {
+                try {
+                    long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE)
+                            .toInstant().toEpochMilli();
+                    if (lastModified <= since) {
+                        notModified.increment();
+                        return true;
+                    }
+                } catch (DateTimeParseException e) {
+                    // Ignore a date we cannot read and send the page
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds the validators to a response. Browsers must revalidate
+         * every time, and keep a copy per user.
+         */
+        NanoHTTPD.Response addHeaders(NanoHTTPD.Response r) {
+            r.addHeader("ETag", etag);
+            r.addHeader("Last-Modified", HTTP_DATE.format(
+                    Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC)));
+            r.addHeader("Cache-Control", "private, no-cache");
+            r.addHeader("Vary", "Cookie");
+            return r;
+        }
+    }
+
+    /**
+     * The version of a tag and when it was set.
+     */
+    private static final class Stamp {
+        final long version;
+        final long time;
+
+        Stamp(long version, long time) {
+            this.version = version;
+            this.time = time;
+        }
+    }
+
+    private static final class Page {
+        final long version;
+        final String page;
+
+        Page(long version, String page) {
+            this.version = version;
+            this.page = page;
+        }
+    }
+}
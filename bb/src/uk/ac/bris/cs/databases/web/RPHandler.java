@@ -39,13 +39,32 @@ public abstract class RPHandler extends AbstractHandler {
     // override if you don't need one.
     boolean needsParameter() { return true; }
     
+    /**
+     * Reads an optional paging cursor from the query string.
+     * @return the cursor, or 0 if it is absent.
+     */
+    long cursorParameter(NanoHTTPD.IHTTPSession session, String name)
+            throws RenderException {
+        String value = session.getParms().get(name);
+        if (value == null || value.equals("")) {
+            return 0;
+        }
+        try {
+            long cursor = Long.parseLong(value);
+            if (cursor < 0) {
+                throw new RenderException(400, "Invalid parameter " + name + ".");
+            }
+            return cursor;
+        } catch (NumberFormatException e) {
+            throw new RenderException(400, "Invalid parameter " + name + ".");
+        }
+    }
+    
     @Override
     public View render(RouterNanoHTTPD.UriResource uriResource,
                        Map<String,String> params,
                        NanoHTTPD.IHTTPSession session) {
         
-        System.out.println("[RPHandler] render " + session.getUri());
-        
         // Get the id or complain.
         
         String id = params.get("id");
@@ -62,7 +81,6 @@ public abstract class RPHandler extends AbstractHandler {
             String user = h.read("user");
             
             if (rp.data.isSuccess()) {
-                System.out.println("[SimpleHandler] rendering " + rp.template);
                 return renderView(rp.template, rp.data.getValue(), user);
             } else if (rp.data.isFatal()) {
                 return new View(500, "Fatal error - " + rp.data.getMessage());
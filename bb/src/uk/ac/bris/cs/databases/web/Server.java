@@ -5,24 +5,132 @@ package uk.ac.bris.cs.databases.web;
 
 import fi.iki.elonen.router.RouterNanoHTTPD;
 import fi.iki.elonen.util.ServerRunner;
+import freemarker.cache.StrongCacheStorage;
 import freemarker.template.Configuration;
+import freemarker.template.TemplateExceptionHandler;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.SQLException;
 import uk.ac.bris.cs.databases.api.APIProvider;
 import uk.ac.bris.cs.databases.cwk3.API;
+import uk.ac.bris.cs.databases.cwk3.ConnectionPool;
+import uk.ac.bris.cs.databases.cwk3.InstrumentedAPI;
+import uk.ac.bris.cs.databases.cwk3.LikeBatcher;
+import uk.ac.bris.cs.databases.cwk3.LikeCounters;
 
 /**
  * @author csxdb
  */
 public class Server extends RouterNanoHTTPD {
     
-    private static final String DATABASE = "jdbc:mariadb://localhost:3306/bb?user=student";
+    // Server-side prepares, so that the pool's statement cache saves a
+    // round-trip per statement
+    private static final String DATABASE =
+            "jdbc:mariadb://localhost:3306/bb?user=student&useServerPrepStmts=true";
+
+    // Connection pool settings, overridable with -Dbb.pool.* system properties
+    private static final int POOL_MIN_SIZE = Integer.getInteger("bb.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("bb.pool.maxSize",
+            Runtime.getRuntime().availableProcessors() * 2);
+    private static final long POOL_BORROW_TIMEOUT = Long.getLong("bb.pool.borrowTimeoutMillis", 5000);
+    private static final long POOL_LEAK_THRESHOLD = Long.getLong("bb.pool.leakThresholdMillis", 30000);
+    private static final int POOL_STATEMENT_CACHE = Integer.getInteger("bb.pool.statementCacheSize", 64);
+
+    // Request workers and the connections allowed to wait for one,
+    // overridable with -Dbb.http.* system properties
+    private static final int HTTP_PORT = Integer.getInteger("bb.http.port", 8000);
+    private static final int HTTP_THREADS = Integer.getInteger("bb.http.threads", POOL_MAX_SIZE * 4);
+    private static final int HTTP_QUEUE_SIZE = Integer.getInteger("bb.http.queueSize", 1000);
+    // Longest a worker waits for the next request on a kept-alive connection,
+    // well below the socket read timeout, see KeepAliveStream
+    private static final int HTTP_KEEP_ALIVE = Integer.getInteger("bb.http.keepAliveMillis", 1000);
+    // Pages streamed at once, each holding a connection until its client
+    // has read it; keep below the pool size. Pages beyond it render in one
+    // piece, see TemplateStream
+    private static final int HTTP_RENDER_THREADS = Integer.getInteger("bb.http.renderThreads",
+            Math.max(POOL_MAX_SIZE / 2, 1));
+
+    // Like write-behind: "off", "async" (return once queued) or "durable"
+    // (return once the batch has committed), see LikeBatcher
+    private static final String LIKES_WRITE_BEHIND = System.getProperty("bb.likes.writeBehind", "off");
+    private static final long LIKES_FLUSH_INTERVAL = Long.getLong("bb.likes.flushIntervalMillis", 50);
+    private static final int LIKES_BATCH_SIZE = Integer.getInteger("bb.likes.batchSize", 500);
+    // Keep like counts in memory and write them out every interval
+    private static final boolean LIKES_COUNTERS = Boolean.getBoolean("bb.likes.counters");
+    private static final long LIKES_RECONCILE_INTERVAL = Long.getLong("bb.likes.reconcileIntervalMillis", 1000);
+
+    // Rendered pages kept for the read-only routes, see PageCache
+    private static final int PAGE_CACHE_SIZE = Integer.getInteger("bb.pageCache.size", 1000);
+    private static final int PAGE_CACHE_MAX_PAGE = Integer.getInteger("bb.pageCache.maxPageChars", 256 * 1024);
+
+    // Time API calls and count their queries for /metrics
+    private static final boolean METRICS = Boolean.parseBoolean(System.getProperty("bb.metrics", "true"));
+
+    // Access log: "stdout", "off" or a file to append to, see AccessLog.
+    // Diagnostics go to stderr so they never interleave with its lines
+    private static final String ACCESS_LOG = System.getProperty("bb.accessLog", "stdout");
+    private static final int ACCESS_LOG_BUFFER = Integer.getInteger("bb.accessLog.bufferSize", 8192);
+    private static final double ACCESS_LOG_SAMPLE_RATE =
+            Double.parseDouble(System.getProperty("bb.accessLog.sampleRate", "1"));
+
+    // Templates are read once and never checked for changes
+    private static final boolean TEMPLATES_PRODUCTION = Boolean.getBoolean("bb.templates.production");
+
+    private final BoundedAsyncRunner runner;
 
     public Server() {
-        super(8000);
+        super(HTTP_PORT);
         addMappings();
+
+        runner = new BoundedAsyncRunner(HTTP_THREADS, HTTP_QUEUE_SIZE);
+        setAsyncRunner(runner);
+        ApplicationContext.getInstance().setRequestRunner(runner);
+        TemplateStream.setRenderThreads(HTTP_RENDER_THREADS);
+    }
+    
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        return super.createClientHandler(finalAccept,
+                new KeepAliveStream(finalAccept, inputStream, HTTP_KEEP_ALIVE));
+    }
+    
+    @Override
+    public Response serve(IHTTPSession session) {
+        long start = System.nanoTime();
+        Response r;
+        try {
+            r = super.serve(session);
+        } finally {
+            KeepAliveStream.requestServed();
+        }
+        // Give the worker to a waiting connection once this response is sent
+        if (r != null && runner.getQueuedCount() > 0) {
+            r.closeConnection(true);
+        }
+        AccessLog log = ApplicationContext.getInstance().getAccessLog();
+        if (log != null && r != null) {
+            log.track(session, r, start);
+        }
+        return r;
+    }
+    
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        // Static assets are sent gzipped already, see StyleHandler. A 304 or
+        // a HEAD response has no body, and gzip would send one (chunked)
+        if (r.getStatus().getRequestStatus() == 304 || r.getRequestMethod() == Method.HEAD) {
+            return false;
+        }
+        return r.getHeader("Content-Encoding") == null && super.useGzipWhenAccepted(r);
     }
     
     @Override public void addMappings() {
@@ -58,32 +166,102 @@ public class Server extends RouterNanoHTTPD {
         addRoute("/login", LoginHandler.class);
         addRoute("/login/:id", LoginHandler.class);
         
+        addRoute("/api/v1/forums", JsonForumsHandler.class);
+        addRoute("/api/v1/forum/:id", JsonForumHandler.class);
+        addRoute("/api/v1/topic/:id", JsonTopicHandler.class);
+        addRoute("/api/v1/people", JsonPeopleHandler.class);
+        addRoute("/api/v1/person/:id", JsonPersonHandler.class);
+        
+        addRoute("/metrics", MetricsHandler.class);
+        
         addRoute("/styles.css", StyleHandler.class, "resources/styles.css");
         addRoute("/gridlex.css", StyleHandler.class, "resources/gridlex.css");
     }
     
     public static void main(String[] args) throws Exception {
 
+        String cs = DATABASE;
+        if (args.length >= 1) {
+            cs = cs + "&localSocket=" + args[0];
+            System.err.println("Using socket file: " + args[0]);
+        } else {
+            System.err.println("Not using a socket file.");
+        }
+        configure(cs);
+        
+        // server //
+        
+        Server server = new Server();
+        ServerRunner.run(Server.class);
+    }
+    
+    /**
+     * Sets up everything the handlers use: the API over a connection pool,
+     * the templates and the page cache.
+     * @param cs JDBC connection string of the database.
+     * @throws IOException if the templates cannot be loaded.
+     */
+    public static void configure(String cs) throws IOException {
+
         ApplicationContext c = ApplicationContext.getInstance();
+        PageCache pages = new PageCache(PAGE_CACHE_SIZE, PAGE_CACHE_MAX_PAGE);
+        c.setPageCache(pages);
 
         // database //
         
-        Connection conn;
         try {
-            String cs = DATABASE;
-            if (args.length >= 1) {
-                cs = cs + "&localSocket=" + args[0];
-                System.out.println("Using socket file: " + args[0]);
-            } else {
-                System.out.println("Not using a socket file.");
+            ConnectionPool pool = new ConnectionPool(cs, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                    POOL_BORROW_TIMEOUT, POOL_LEAK_THRESHOLD, POOL_STATEMENT_CACHE);
+            LikeCounters counters = null;
+            if (LIKES_COUNTERS) {
+                counters = new LikeCounters(pool, LIKES_RECONCILE_INTERVAL);
+                System.err.println("Keeping like counts in memory.");
+            }
+
+            LikeBatcher likes;
+            switch (LIKES_WRITE_BEHIND) {
+                case "off":
+                    likes = null;
+                    break;
+                case "async":
+                case "durable":
+                    likes = new LikeBatcher(pool, counters, LIKES_FLUSH_INTERVAL, LIKES_BATCH_SIZE,
+                            LIKES_WRITE_BEHIND.equals("durable"));
+                    // Post like counts change when the batch commits, not
+                    // when LikePostHandler returns
+                    likes.setOnCommit(topics -> pages.invalidate(
+                            topics.stream().map(PageCache::topic).toArray(String[]::new)));
+                    System.err.println("Writing likes behind (" + LIKES_WRITE_BEHIND + ").");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown bb.likes.writeBehind " + LIKES_WRITE_BEHIND);
+            }
+
+            // Write out queued likes, then the counts they changed, on a
+            // normal shutdown. One hook, as hooks run in no particular order.
+            LikeBatcher batcher = likes;
+            LikeCounters likeCounters = counters;
+            if (batcher != null || likeCounters != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    if (batcher != null) {
+                        batcher.close();
+                    }
+                    if (likeCounters != null) {
+                        likeCounters.close();
+                    }
+                }));
+            }
+
+            APIProvider api = new API(pool, likes, counters);
+            if (METRICS) {
+                pool.setCountingQueries(true);
+                api = new InstrumentedAPI(api);
             }
-            
-            conn = DriverManager.getConnection(cs);
-            conn.setAutoCommit(false);
-            APIProvider api = new API(conn);
             c.setApi(api);
+            c.setConnectionPool(pool);
+            c.setLikeBatcher(likes);
         } catch (SQLException e) {
-            System.out.println("Connection to database failed. " +
+            System.err.println("Connection to database failed. " +
                 "Check that the database is running and that the socket file " +
                 "is correct if you are using one.");
             throw new RuntimeException(e);
@@ -91,14 +269,57 @@ public class Server extends RouterNanoHTTPD {
 
         // templating //
         
+        File templates = new File("resources/templates");
         Configuration cfg = new Configuration(Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS);
-        cfg.setDirectoryForTemplateLoading(new File("resources/templates"));
+        cfg.setDirectoryForTemplateLoading(templates);
         cfg.setDefaultEncoding("UTF-8");
+        // For ?url in templates
+        cfg.setURLEscapingCharset("UTF-8");
+        if (TEMPLATES_PRODUCTION) {
+            // Keep every template for good and never look at the files again
+            cfg.setCacheStorage(new StrongCacheStorage());
+            cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+            cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        }
+        
+        long start = System.currentTimeMillis();
+        int loaded = loadTemplates(cfg, templates);
+        System.err.println("Loaded " + loaded + " templates in " +
+            (System.currentTimeMillis() - start) + " ms" +
+            (TEMPLATES_PRODUCTION ? " (production mode)." : "."));
         c.setTemplateConfiguration(cfg);
         
-        // server //
+        // access log //
         
-        Server server = new Server();
-        ServerRunner.run(Server.class);
+        if (!ACCESS_LOG.equals("off")) {
+            Writer out = ACCESS_LOG.equals("stdout")
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(ACCESS_LOG), StandardCharsets.UTF_8,
+                                          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            AccessLog log = new AccessLog(out, ACCESS_LOG_BUFFER, ACCESS_LOG_SAMPLE_RATE);
+            c.setAccessLog(log);
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+        }
+    }
+    
+    /**
+     * Parses every template up front, so the first request for a page does
+     * not pay for it and a broken template stops the server from starting.
+     * @return the number of templates loaded.
+     */
+    private static int loadTemplates(Configuration cfg, File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list templates in " + dir);
+        }
+        
+        int loaded = 0;
+        for (File f : files) {
+            if (f.isFile()) {
+                cfg.getTemplate(f.getName());
+                loaded++;
+            }
+        }
+        return loaded;
     }
 }
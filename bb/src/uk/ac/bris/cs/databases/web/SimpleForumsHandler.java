@@ -1,8 +1,8 @@
 package uk.ac.bris.cs.databases.web;
 
-import java.util.List;
 import uk.ac.bris.cs.databases.api.APIProvider;
 import uk.ac.bris.cs.databases.api.Result;
+import uk.ac.bris.cs.databases.api.ResultCursor;
 import uk.ac.bris.cs.databases.api.SimpleForumSummaryView;
 
 /**
@@ -16,9 +16,11 @@ public class SimpleForumsHandler extends SimpleHandler {
     @Override
     RenderPair simpleRender(String p) throws RenderException {
         APIProvider api = ApplicationContext.getInstance().getApi();
-        Result<List<SimpleForumSummaryView>> r = api.getSimpleForums();
-        return new RenderPair("SimpleForumsView.ftl", ListWrapper.wrap(r));
+        Result<ResultCursor<SimpleForumSummaryView>> r = api.streamSimpleForums();
+        return new RenderPair("SimpleForumsView.ftl", CursorWrapper.wrap(r));
     }
 
     @Override boolean needsParameter() { return false; }
+
+    @Override boolean streamsResponse() { return true; }
 }
@@ -1,5 +1,6 @@
 package uk.ac.bris.cs.databases.web;
 
+import fi.iki.elonen.NanoHTTPD;
 import uk.ac.bris.cs.databases.api.APIProvider;
 import uk.ac.bris.cs.databases.api.Result;
 import uk.ac.bris.cs.databases.api.SimpleTopicView;
@@ -8,14 +9,20 @@ import uk.ac.bris.cs.databases.api.SimpleTopicView;
  *
  * @author csxdb
  */
-public class SimpleTopicHandler extends SimpleHandler {
+public class SimpleTopicHandler extends RPHandler {
+
+    // Posts shown per page; ?after=<post number> continues after that post.
+    static final int PAGE_SIZE = 50;
 
     @Override
-    public RenderPair simpleRender(String p) {
+    RenderPair doRender(String p,
+                        NanoHTTPD.IHTTPSession session)
+                        throws RenderException {
         
         long id = Long.parseLong(p);
+        long after = cursorParameter(session, "after");
         APIProvider api = ApplicationContext.getInstance().getApi();
-        Result<SimpleTopicView> r = api.getSimpleTopic(id);
+        Result<SimpleTopicView> r = api.getSimpleTopic(id, after, PAGE_SIZE);
         return new RenderPair("SimpleTopicView.ftl", r);
     }
 }
@@ -0,0 +1,112 @@
+package uk.ac.bris.cs.databases.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A static file read once and kept in memory, along with a gzipped copy
+ * and a strong ETag for each. Files are not re-read until the server
+ * restarts.
+ */
+class StaticAsset {
+
+    private static final ConcurrentHashMap<String, StaticAsset> ASSETS = new ConcurrentHashMap<>();
+
+    private final byte[] data;
+    // Null if compressing does not make the file smaller
+    private final byte[] gzipped;
+    private final String etag;
+    private final String gzippedEtag;
+    private final long lastModified;
+
+    private StaticAsset(byte[] data, long lastModified) {
+        this.data = data;
+        this.lastModified = lastModified / 1000 * 1000;
+
+        byte[] gz = gzip(data);
+        this.gzipped = gz.length < data.length ? gz : null;
+
+        String hash = hash(data);
+        this.etag = "\"" + hash + "\"";
+        this.gzippedEtag = "\"" + hash + "-gz\"";
+    }
+
+    /**
+     * @return the file, read on first use.
+     * @throws IOException if the file cannot be read.
+     */
+    static StaticAsset get(String filename) throws IOException {
+        try {
+            return ASSETS.computeIfAbsent(filename, name -> {
+                try {
+                    File f = new File(name);
+                    return new StaticAsset(Files.readAllBytes(f.toPath()), f.lastModified());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the file contents, compressed if asked for and worth it.
+     */
+    byte[] getData(boolean gzip) {
+        return gzip && gzipped != null ? gzipped : data;
+    }
+
+    /**
+     * @return whether getData(gzip) is compressed.
+     */
+    boolean isGzipped(boolean gzip) {
+        return gzip && gzipped != null;
+    }
+
+    /**
+     * @return the ETag of getData(gzip).
+     */
+    String getEtag(boolean gzip) {
+        return isGzipped(gzip) ? gzippedEtag : etag;
+    }
+
+    /**
+     * @return the file's modification time, to the second.
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            // Cannot happen writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
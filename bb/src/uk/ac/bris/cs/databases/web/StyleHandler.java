@@ -2,38 +2,109 @@ package uk.ac.bris.cs.databases.web;
 
 import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.router.RouterNanoHTTPD;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Map;
 
 /**
+ * Serves a stylesheet from memory, gzipped when the browser accepts it,
+ * with a strong ETag and Cache-Control so browsers keep it between pages.
  *
  * @author David
  */
 public class StyleHandler extends AbstractHandler {
 
+    private static final int MAX_AGE = Integer.getInteger("bb.static.maxAgeSeconds", 3600);
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    @Override
+    public NanoHTTPD.Response get(RouterNanoHTTPD.UriResource uriResource,
+                                  Map<String, String> urlParams,
+                                  NanoHTTPD.IHTTPSession session) {
+
+        String filename = uriResource.initParameter(String.class);
+
+        StaticAsset asset;
+        try {
+            asset = StaticAsset.get(filename);
+        } catch (IOException e) {
+            return NanoHTTPD.newFixedLengthResponse(new Status(500), "text/plain",
+                "Error reading file - " + e.getMessage());
+        }
+
+        Map<String, String> headers = session.getHeaders();
+        String acceptEncoding = headers.get("accept-encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        NanoHTTPD.Response r;
+        if (isNotModified(asset, gzip, headers)) {
+            // No body, so no Content-Type either
+            r = NanoHTTPD.newFixedLengthResponse(
+                NanoHTTPD.Response.Status.NOT_MODIFIED, null, (String) null);
+        } else {
+            byte[] data = asset.getData(gzip);
+            r = NanoHTTPD.newFixedLengthResponse(new Status(200), getMimeType(),
+                new ByteArrayInputStream(data), data.length);
+            if (asset.isGzipped(gzip)) {
+                r.addHeader("Content-Encoding", "gzip");
+            }
+        }
+
+        r.addHeader("ETag", asset.getEtag(gzip));
+        r.addHeader("Last-Modified", HTTP_DATE.format(
+            Instant.ofEpochMilli(asset.getLastModified()).atZone(ZoneOffset.UTC)));
+        r.addHeader("Cache-Control", "public, max-age=" + MAX_AGE);
+        r.addHeader("Vary", "Accept-Encoding");
+        return r;
+    }
+
+    private static boolean isNotModified(StaticAsset asset, boolean gzip,
+                                         Map<String, String> headers) {
+        String ifNoneMatch = headers.get("if-none-match");
+        if (ifNoneMatch != null) {
+            // Compared weakly, as If-None-Match requires: W/"x" matches "x"
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(asset.getEtag(gzip)) || tag.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = headers.get("if-modified-since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE)
+                    .toInstant().toEpochMilli();
+                return asset.getLastModified() <= since;
+            } catch (DateTimeParseException e) {
+                // Send the file rather than guess
+            }
+        }
+        return false;
+    }
+
     @Override
     public View render(RouterNanoHTTPD.UriResource uriResource,
                        Map<String, String> params,
                        NanoHTTPD.IHTTPSession session) {
-        
+
         String filename = uriResource.initParameter(String.class);
-        
+
         try {
-            File f = new File(filename);
-            FileReader fr = new FileReader(f);
-            BufferedReader br = new BufferedReader(fr);
-            
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
-                sb.append("\n");
-            }
-            br.close();
-            return new View(200, sb.toString());
+            StaticAsset asset = StaticAsset.get(filename);
+            return new View(200, new String(asset.getData(false), StandardCharsets.UTF_8));
         } catch (IOException e) {
             return new View(500, "Error reading file - " + e.getMessage());
         }
@@ -43,6 +114,6 @@ public class StyleHandler extends AbstractHandler {
     public String getMimeType() {
         return "text/css";
     }
-    
-    
+
+
 }
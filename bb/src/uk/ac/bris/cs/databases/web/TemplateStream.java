@@ -0,0 +1,327 @@
+package uk.ac.bris.cs.databases.web;
+
+import fi.iki.elonen.NanoHTTPD;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Renders a template on a background thread into a pipe, so the response
+ * can be sent in chunks while the rest of the page is still being produced.
+ * At most one buffer of the page is held in memory at a time. View data
+ * such as a cursor is closed once the page is done.
+ *
+ * Renderers are a fixed number of threads. A streamed page holds a pooled
+ * connection until its client has read it all, however slow the client,
+ * so a handler reserves a renderer before it opens a cursor and renders
+ * the page in one piece when there is none free, rather than wait. Keep
+ * the renderers below the pool size, so that slow clients cannot hold
+ * every connection. If rendering fails part way, the response is cut off
+ * and the connection closed, so that the client does not take a truncated
+ * page for a whole one.
+ */
+class TemplateStream {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final ThreadPoolExecutor RENDERERS = renderers(
+            Runtime.getRuntime().availableProcessors());
+
+    // Renderers reserved; never more than there are, so none waits in the
+    // executor's queue for longer than a renderer takes to finish up
+    private static final AtomicInteger RESERVED = new AtomicInteger();
+
+    private TemplateStream() {}
+
+    private static ThreadPoolExecutor renderers(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "template-renderer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Sets the number of renderer threads.
+     * @param threads at least 1.
+     */
+    static void setRenderThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid render threads " + threads);
+        }
+        if (threads > RENDERERS.getMaximumPoolSize()) {
+            RENDERERS.setMaximumPoolSize(threads);
+            RENDERERS.setCorePoolSize(threads);
+        } else {
+            RENDERERS.setCorePoolSize(threads);
+            RENDERERS.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Reserves a renderer for one body. Take it before opening the data the
+     * body reads from, such as a cursor, and hand it to render() or write(),
+     * or give it back with release().
+     * @return false if every renderer is busy; produce the body in one
+     * piece then, so its connection is given back before it is sent.
+     */
+    static boolean reserve() {
+        while (true) {
+            int n = RESERVED.get();
+            if (n >= RENDERERS.getMaximumPoolSize()) {
+                return false;
+            }
+            if (RESERVED.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a reservation that render() or write() did not take.
+     */
+    static void release() {
+        RESERVED.decrementAndGet();
+    }
+
+    /**
+     * Writes a response body that is not a template.
+     */
+    interface Producer {
+        void writeTo(Writer w) throws IOException;
+    }
+
+    /**
+     * Starts rendering a template, on a renderer reserved with reserve().
+     * The reservation is given back once the page is done, or if this throws.
+     * @param template
+     * @param model the template data; its "data" entry is closed afterwards.
+     * @return The rendered page, readable as it is produced. Closing it
+     * early (e.g. when the client goes away) stops the rendering.
+     * @throws IOException if the pipe cannot be set up.
+     */
+    static Body render(Template template, Map<String, Object> model) throws IOException {
+        return render(template, model, null, 0);
+    }
+
+    /**
+     * Starts rendering a template, also keeping a copy of the page, on a
+     * renderer reserved with reserve(). The reservation is given back once
+     * the page is done, or if this throws.
+     * @param template
+     * @param model the template data; its "data" entry is closed afterwards.
+     * @param rendered given the whole page once it has rendered without
+     * errors, unless it is longer than maxChars. May be null.
+     * @param maxChars the longest page that is copied.
+     * @return The rendered page, readable as it is produced.
+     * @throws IOException if the pipe cannot be set up.
+     */
+    static Body render(Template template, Map<String, Object> model,
+                       Consumer<String> rendered, int maxChars) throws IOException {
+        Body in = new Body();
+        PipedOutputStream out = connect(in);
+
+        RENDERERS.execute(() -> {
+            CopyingWriter copy = null;
+            boolean complete = false;
+            Writer w = new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            try {
+                if (rendered == null) {
+                    template.process(model, w);
+                } else {
+                    copy = new CopyingWriter(w, maxChars);
+                    template.process(model, copy);
+                }
+                complete = true;
+            } catch (TemplateException | IOException | RuntimeException e) {
+                // The status line has gone out already, so the response is cut off
+                in.fail(e);
+                System.err.println("[TemplateStream] rendering " + template.getName()
+                        + " stopped - " + e.getMessage());
+            } finally {
+                // Failed before the end of the pipe is closed, so the reader
+                // never mistakes it for the end of the page
+                closeQuietly(w);
+                AbstractHandler.closeData(model.get("data"));
+                release();
+            }
+
+            if (complete && copy != null && copy.isCopied()) {
+                rendered.accept(copy.toString());
+            }
+        });
+        return in;
+    }
+
+    /**
+     * Starts writing a response body, as render() does for a template, on
+     * a renderer reserved with reserve().
+     * @param name what is written, for the log.
+     * @param producer
+     * @param data closed once the body is written, e.g. a cursor.
+     * @return The body, readable as it is produced.
+     * @throws IOException if the pipe cannot be set up.
+     */
+    static Body write(String name, Producer producer, Object data) throws IOException {
+        Body in = new Body();
+        PipedOutputStream out = connect(in);
+
+        RENDERERS.execute(() -> {
+            Writer w = new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            try {
+                producer.writeTo(w);
+            } catch (IOException | RuntimeException e) {
+                in.fail(e);
+                System.err.println("[TemplateStream] writing " + name + " stopped - " + e.getMessage());
+            } finally {
+                closeQuietly(w);
+                AbstractHandler.closeData(data);
+                release();
+            }
+        });
+        return in;
+    }
+
+    private static PipedOutputStream connect(Body in) throws IOException {
+        try {
+            return new PipedOutputStream(in);
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Writer w) {
+        try {
+            w.close();
+        } catch (IOException e) {
+            // The reader has gone; nothing is waiting for the rest
+        }
+    }
+
+    /**
+     * A body as it is produced. If producing it fails, reading it fails
+     * too, once what was produced before has been read, and its response
+     * closes the connection instead of ending normally.
+     */
+    static final class Body extends PipedInputStream {
+        private volatile Exception failure = null;
+        // Only touched by the thread sending the response
+        private NanoHTTPD.Response response = null;
+
+        private Body() {
+            super(BUFFER_SIZE);
+        }
+
+        /**
+         * @return a chunked response that sends this body.
+         */
+        NanoHTTPD.Response respond(NanoHTTPD.Response.IStatus status, String mimeType) {
+            response = NanoHTTPD.newChunkedResponse(status, mimeType, this);
+            return response;
+        }
+
+        private void fail(Exception e) {
+            failure = e;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                checkFailure();
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                checkFailure();
+            }
+            return n;
+        }
+
+        private void checkFailure() throws IOException {
+            Exception e = failure;
+            if (e != null) {
+                // NanoHTTPD gives up on the response without sending the
+                // last chunk, and closes the connection after it
+                if (response != null) {
+                    response.closeConnection(true);
+                }
+                throw new IOException("Body not produced - " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Passes writes on and keeps a copy of them, up to a limit.
+     */
+    private static final class CopyingWriter extends Writer {
+        private final Writer out;
+        private final int maxChars;
+        // Dropped once the page gets too long
+        private StringBuilder copy = new StringBuilder();
+
+        CopyingWriter(Writer out, int maxChars) {
+            this.out = out;
+            this.maxChars = maxChars;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+            if (copy != null) {
+                if (copy.length() + len > maxChars) {
+                    copy = null;
+                } else {
+                    copy.append(buf, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        /**
+         * @return whether everything written so far was copied.
+         */
+        boolean isCopied() {
+            return copy != null;
+        }
+
+        @Override
+        public String toString() {
+            return copy.toString();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package uk.ac.bris.cs.databases.web;
 
+import fi.iki.elonen.NanoHTTPD;
+import java.util.Map;
 import uk.ac.bris.cs.databases.api.APIProvider;
 import uk.ac.bris.cs.databases.api.Result;
 import uk.ac.bris.cs.databases.api.TopicView;
@@ -8,14 +10,26 @@ import uk.ac.bris.cs.databases.api.TopicView;
  *
  * @author csxdb
  */
-public class TopicHandler extends SimpleHandler {
+public class TopicHandler extends RPHandler {
+
+    // Posts shown per page; ?after=<post number> continues after that post.
+    static final int PAGE_SIZE = 50;
 
     @Override
-    public RenderPair simpleRender(String p) {
+    RenderPair doRender(String p,
+                        NanoHTTPD.IHTTPSession session)
+                        throws RenderException {
         
         long id = Long.parseLong(p);
+        long after = cursorParameter(session, "after");
         APIProvider api = ApplicationContext.getInstance().getApi();
-        Result<TopicView> r = api.getTopic(id);
+        Result<TopicView> r = api.getTopic(id, after, PAGE_SIZE);
         return new RenderPair("TopicView.ftl", r);
     }
+
+    @Override
+    String[] cacheTags(Map<String, String> urlParams) {
+        Long id = idParameter(urlParams, "id");
+        return id == null ? null : new String[] { PageCache.topic(id) };
+    }
 }
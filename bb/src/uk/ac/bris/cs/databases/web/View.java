@@ -1,5 +1,8 @@
 package uk.ac.bris.cs.databases.web;
 
+import freemarker.template.Template;
+import java.util.Map;
+
 /**
  *
  * @author csxdb
@@ -7,6 +10,10 @@ package uk.ac.bris.cs.databases.web;
 public class View {
     private int code;
     private String contents;
+    
+    /* Set instead of contents when the page is rendered while it is sent. */
+    private Template template;
+    private Map<String, Object> model;
 
     public View() {
     }
@@ -16,6 +23,19 @@ public class View {
         this.contents = contents;
     }
     
+    public View(int code, Template template, Map<String, Object> model) {
+        this.code = code;
+        this.template = template;
+        this.model = model;
+    }
+    
+    /**
+     * @return whether the template is still to be rendered into the response
+     */
+    public boolean isStreaming() {
+        return template != null;
+    }
+    
     /**
      * @return the code
      */
@@ -43,4 +63,18 @@ public class View {
     public void setContents(String contents) {
         this.contents = contents;
     }
+
+    /**
+     * @return the template, if streaming
+     */
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the template data, if streaming
+     */
+    public Map<String, Object> getModel() {
+        return model;
+    }
 }
@@ -4,6 +4,8 @@
  * Unauthorized copying of this file is strictly prohibited.
  */
 
+DROP TABLE IF EXISTS TopicSummary;
+DROP TABLE IF EXISTS ForumSummary;
 DROP TABLE IF EXISTS PostLikes;
 DROP TABLE IF EXISTS TopicLikes;
 DROP TABLE IF EXISTS Post;
@@ -28,6 +30,7 @@ CREATE TABLE Topic (
 	forum_id INTEGER NOT NULL,
 	person_id INTEGER NOT NULL,
 	title VARCHAR(255) NOT NULL,
+	INDEX idx_topic_forum_title (forum_id, title),
 	CONSTRAINT fk_topic_nonexistent_forumid FOREIGN KEY (forum_id) REFERENCES Forum(forum_id),
 	CONSTRAINT fk_topic_nonexistent_personid FOREIGN KEY (person_id) REFERENCES Person(id)
 );
@@ -39,6 +42,8 @@ CREATE TABLE Post (
 	posted_at DATETIME NOT NULL,
 	text VARCHAR(2048) NOT NULL,
 	total_likes INTEGER DEFAULT 0,
+	post_number INTEGER NOT NULL,
+	CONSTRAINT uq_post_topic_number UNIQUE (topic_id, post_number),
 	CONSTRAINT fk_post_nonexistent_topicid FOREIGN KEY (topic_id) REFERENCES Topic(topic_id),
 	CONSTRAINT fk_post_nonexistent_personid FOREIGN KEY (person_id) REFERENCES Person(id)
 );
@@ -47,6 +52,7 @@ CREATE TABLE TopicLikes (
 	topic_id INTEGER NOT NULL,
 	person_id INTEGER NOT NULL,
 	CONSTRAINT pk_topiclikes_already_liked PRIMARY KEY (topic_id, person_id),
+	INDEX idx_topiclikes_person (person_id, topic_id),
 	CONSTRAINT fk_topiclikes_nonexistent_topicid FOREIGN KEY (topic_id) REFERENCES Topic(topic_id),
 	CONSTRAINT fk_topiclikes_nonexistent_personid FOREIGN KEY (person_id) REFERENCES Person(id)
 );
@@ -55,6 +61,33 @@ CREATE TABLE PostLikes (
 	post_id INTEGER NOT NULL,
 	person_id INTEGER NOT NULL,
 	CONSTRAINT pk_postlikes_already_liked PRIMARY KEY (post_id, person_id),
+	INDEX idx_postlikes_person (person_id, post_id),
 	CONSTRAINT fk_postlikes_nonexistent_postid FOREIGN KEY (post_id) REFERENCES Post (post_id),
 	CONSTRAINT fk_postlikes_nonexist_personid FOREIGN KEY (person_id) REFERENCES Person (id)
 );
+
+-- Activity summaries, maintained by the API on every write so that the
+-- forum and topic pages do not aggregate over Post on every read.
+-- like_count counts TopicLikes; post likes live in Post.total_likes.
+
+CREATE TABLE ForumSummary (
+	forum_id INTEGER PRIMARY KEY,
+	post_count INTEGER NOT NULL DEFAULT 0,
+	like_count INTEGER NOT NULL DEFAULT 0,
+	last_topic_id INTEGER NULL,
+	last_post_id INTEGER NULL,
+	last_post_at DATETIME NULL,
+	CONSTRAINT fk_forumsummary_nonexistent_forumid FOREIGN KEY (forum_id) REFERENCES Forum(forum_id)
+);
+
+CREATE TABLE TopicSummary (
+	topic_id INTEGER PRIMARY KEY,
+	forum_id INTEGER NOT NULL,
+	post_count INTEGER NOT NULL DEFAULT 0,
+	like_count INTEGER NOT NULL DEFAULT 0,
+	last_post_id INTEGER NULL,
+	last_post_at DATETIME NULL,
+	INDEX idx_topicsummary_forum_recent (forum_id, last_post_at, topic_id),
+	CONSTRAINT fk_topicsummary_nonexistent_topicid FOREIGN KEY (topic_id) REFERENCES Topic(topic_id),
+	CONSTRAINT fk_topicsummary_nonexistent_forumid FOREIGN KEY (forum_id) REFERENCES Forum(forum_id)
+);
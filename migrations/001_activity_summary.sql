@@ -0,0 +1,45 @@
+/*
+ * Adds the ForumSummary and TopicSummary tables to an existing database
+ * and fills them from the current posts and likes.
+ */
+
+CREATE TABLE ForumSummary (
+	forum_id INTEGER PRIMARY KEY,
+	post_count INTEGER NOT NULL DEFAULT 0,
+	like_count INTEGER NOT NULL DEFAULT 0,
+	last_topic_id INTEGER NULL,
+	last_post_id INTEGER NULL,
+	last_post_at DATETIME NULL,
+	CONSTRAINT fk_forumsummary_nonexistent_forumid FOREIGN KEY (forum_id) REFERENCES Forum(forum_id)
+);
+
+CREATE TABLE TopicSummary (
+	topic_id INTEGER PRIMARY KEY,
+	forum_id INTEGER NOT NULL,
+	post_count INTEGER NOT NULL DEFAULT 0,
+	like_count INTEGER NOT NULL DEFAULT 0,
+	last_post_id INTEGER NULL,
+	last_post_at DATETIME NULL,
+	CONSTRAINT fk_topicsummary_nonexistent_topicid FOREIGN KEY (topic_id) REFERENCES Topic(topic_id),
+	CONSTRAINT fk_topicsummary_nonexistent_forumid FOREIGN KEY (forum_id) REFERENCES Forum(forum_id)
+);
+
+INSERT INTO TopicSummary (topic_id, forum_id, post_count, like_count, last_post_id, last_post_at)
+SELECT Topic.topic_id, Topic.forum_id,
+	(SELECT COUNT(*) FROM Post WHERE Post.topic_id = Topic.topic_id),
+	(SELECT COUNT(*) FROM TopicLikes WHERE TopicLikes.topic_id = Topic.topic_id),
+	(SELECT Post.post_id FROM Post WHERE Post.topic_id = Topic.topic_id
+		ORDER BY Post.posted_at DESC, Post.post_id DESC LIMIT 1),
+	(SELECT MAX(Post.posted_at) FROM Post WHERE Post.topic_id = Topic.topic_id)
+FROM Topic;
+
+INSERT INTO ForumSummary (forum_id, post_count, like_count, last_topic_id, last_post_id, last_post_at)
+SELECT Forum.forum_id,
+	(SELECT COALESCE(SUM(post_count), 0) FROM TopicSummary WHERE TopicSummary.forum_id = Forum.forum_id),
+	(SELECT COALESCE(SUM(like_count), 0) FROM TopicSummary WHERE TopicSummary.forum_id = Forum.forum_id),
+	(SELECT topic_id FROM TopicSummary WHERE TopicSummary.forum_id = Forum.forum_id
+		ORDER BY last_post_at DESC, last_post_id DESC LIMIT 1),
+	(SELECT last_post_id FROM TopicSummary WHERE TopicSummary.forum_id = Forum.forum_id
+		ORDER BY last_post_at DESC, last_post_id DESC LIMIT 1),
+	(SELECT MAX(last_post_at) FROM TopicSummary WHERE TopicSummary.forum_id = Forum.forum_id)
+FROM Forum;
@@ -0,0 +1,15 @@
+/*
+ * Secondary indexes for the access paths used by the API.
+ *
+ * Post (topic_id, posted_at, post_id): the posts of a topic in order,
+ *   used by getTopic, getSimpleTopic and likePost.
+ * Topic (forum_id, title): the topics of a forum by title, used by getForum.
+ * TopicLikes / PostLikes (person_id, ...): likes given by a person.
+ *
+ * Person lookups go through the UNIQUE index on username.
+ */
+
+CREATE INDEX idx_post_topic_posted ON Post (topic_id, posted_at, post_id);
+CREATE INDEX idx_topic_forum_title ON Topic (forum_id, title);
+CREATE INDEX idx_topiclikes_person ON TopicLikes (person_id, topic_id);
+CREATE INDEX idx_postlikes_person ON PostLikes (person_id, post_id);
@@ -0,0 +1,20 @@
+/*
+ * Stores each post's number within its topic, numbering existing posts in
+ * the order they were created. ROW_NUMBER() needs MariaDB 10.2 or later.
+ *
+ * The unique (topic_id, post_number) index replaces idx_post_topic_posted
+ * for reading the posts of a topic in order.
+ */
+
+ALTER TABLE Post ADD COLUMN post_number INTEGER NULL;
+
+UPDATE Post
+JOIN (SELECT post_id,
+		ROW_NUMBER() OVER (PARTITION BY topic_id ORDER BY posted_at, post_id) AS n
+	FROM Post) AS Numbered ON Numbered.post_id = Post.post_id
+SET Post.post_number = Numbered.n;
+
+ALTER TABLE Post
+	MODIFY post_number INTEGER NOT NULL,
+	ADD CONSTRAINT uq_post_topic_number UNIQUE (topic_id, post_number),
+	DROP INDEX idx_post_topic_posted;
@@ -0,0 +1,6 @@
+/*
+ * The topics of a forum by most recent post, used to page through the
+ * advanced forum view (getAdvancedForum) without sorting the whole forum.
+ */
+
+CREATE INDEX idx_topicsummary_forum_recent ON TopicSummary (forum_id, last_post_at, topic_id);